@@ -3,7 +3,9 @@ package spiderdrawer;
 import java.util.ArrayList;
 
 import spiderdrawer.shape.Point;
+import spiderdrawer.shape.SceneState;
 import spiderdrawer.shape.Shading;
+import spiderdrawer.shape.ShapeList;
 import spiderdrawer.shape.interfaces.Deletable;
 import spiderdrawer.shape.interfaces.Movable;
 import spiderdrawer.shape.interfaces.Shape;
@@ -14,16 +16,21 @@ public class Action {
         NULL, MOVE, DELETE, CREATE;
     }
 	
-	private ArrayList<Shape> shapeList;
+	private ShapeList shapeList;
 	private ActionType type;
 	private Movable mShape;
 	private Point from;
 	private Point to;
 	private ArrayList<Deletable> deleted;
+	private SceneState deletedState;
 	private Shape created;
 	private boolean undid = false;
+	/* What retainedBytes() was when the history last counted it. */
+	long countedBytes;
 	
-	public Action(ArrayList<Shape> shapeList) {
+	private final static int ACTION_BYTES = 64;
+	
+	public Action(ShapeList shapeList) {
 		this.shapeList = shapeList;
 		type = ActionType.NULL;
 	}
@@ -42,9 +49,14 @@ public class Action {
 	public void setDelete() {
 		type = ActionType.DELETE;
 		this.deleted = new ArrayList<Deletable>();
+		this.deletedState = new SceneState(shapeList);
 	}
 	
+	/*
+	 * Adds a shape to the deletion, before it's removed, so that undoing it can set it and the objects around it back.
+	 */
 	public void add(Deletable deleted) {
+		deletedState.keep(deleted);
 		this.deleted.add(deleted);
 	}
 	
@@ -56,11 +68,16 @@ public class Action {
 	public void undo() {
 		if (undid)
 			return;
-		switch (type) {
-			case MOVE: undoMove(); break;
-			case DELETE: undoDelete(); break;
-			case CREATE: undoCreate(); break;
-			default: break;
+		shapeList.beginBatch();
+		try {
+			switch (type) {
+				case MOVE: undoMove(); break;
+				case DELETE: undoDelete(); break;
+				case CREATE: undoCreate(); break;
+				default: break;
+			}
+		} finally {
+			shapeList.endBatch();
 		}
 		undid = true;
 		
@@ -69,27 +86,49 @@ public class Action {
 	public void redo() {
 		if (!undid)
 			return;
-		switch (type) {
-			case MOVE: redoMove(); break;
-			case DELETE: redoDelete(); break;
-			case CREATE: redoCreate(); break;
-			default: break;
+		shapeList.beginBatch();
+		try {
+			switch (type) {
+				case MOVE: redoMove(); break;
+				case DELETE: redoDelete(); break;
+				case CREATE: redoCreate(); break;
+				default: break;
+			}
+		} finally {
+			shapeList.endBatch();
 		}
 		undid = false;
 	}
 	
+	/*
+	 * Roughly how much memory the action keeps reachable that the scene doesn't: the shapes it deleted and the state
+	 * kept to undo it, or the shape it created once undone.
+	 */
+	long retainedBytes() {
+		long bytes = ACTION_BYTES;
+		if (type == ActionType.DELETE) {
+			bytes += deletedState.retainedBytes();
+			for (int i = 0; i < deleted.size() && !undid; i++)
+				bytes += SceneState.shapeBytes(deleted.get(i));
+		} else if (type == ActionType.CREATE && undid) {
+			bytes += SceneState.shapeBytes(created);
+		}
+		return bytes;
+	}
+	
 	private void undoMove() {
 		mShape.move(to, from);
-		mShape.recompute(false);
+		shapeList.schedule(mShape, false);
 	}
 	
 	private void undoDelete() {
 		shapeList.addAll(deleted);
-		for (int i = 0; i < deleted.size(); i++)
-			if (deleted.get(i) instanceof Movable)
-				((Movable) deleted.get(i)).recompute(false);
-			else if (deleted.get(i) instanceof Shading)
-				((Shading) deleted.get(i)).compute();
+		try {
+			deletedState.restore();
+		} catch (IllegalStateException e) {
+			shapeList.removeAll(deleted);
+			throw e;
+		}
 	}
 	
 	private void undoCreate() {
@@ -100,21 +139,19 @@ public class Action {
 	
 	private void redoMove() {
 		mShape.move(from, to);
-		mShape.recompute(false);
+		shapeList.schedule(mShape, false);
 	}
 	
 	private void redoDelete() {
 		shapeList.removeAll(deleted);
-		for (int i = 0; i < deleted.size(); i++) {
-			shapeList.remove(deleted.get(i));
+		for (int i = 0; i < deleted.size(); i++)
 			deleted.get(i).remove();
-		}
 	}
 	
 	private void redoCreate() {
 		shapeList.add(created);
 		if (created instanceof Movable)
-			((Movable) created).recompute(false);
+			shapeList.schedule((Movable) created, false);
 		else if (created instanceof Shading)
 			((Shading) created).compute();
 	}
@@ -1,30 +1,88 @@
 package spiderdrawer;
 
+import static spiderdrawer.Parameters.UNDO_HISTORY_ACTIONS;
+import static spiderdrawer.Parameters.UNDO_HISTORY_BYTES;
+
 import java.util.ArrayList;
 
+import spiderdrawer.shape.SceneJournal;
+
 public class ActionManager {
 
 	private ArrayList<Action> actionList;
 	int current;
+	private SceneJournal journal;
+	/* The sum of the actions' counted bytes, kept as they are added, undone, redone and dropped. */
+	private long bytes;
 	
 	public ActionManager() {
 		actionList = new ArrayList<Action>();
 	}
 	
+	/*
+	 * What every action added, undone or redone changed is also recorded in the journal.
+	 */
+	public ActionManager(SceneJournal journal) {
+		this();
+		this.journal = journal;
+	}
+	
 	public synchronized void add(Action action) {
 		while (actionList.size() > current) 
-			actionList.remove(actionList.size()-1);
+			bytes -= actionList.remove(actionList.size()-1).countedBytes;
 		actionList.add(action);
+		recount(action);
 		current = actionList.size();
+		if (journal != null)
+			journal.record();
+		compact();
+	}
+	
+	/*
+	 * While the history is over its budget the oldest actions are dropped, releasing the shapes they hold,
+	 * so undo stops at the scene as it was after them. The latest action can always be undone.
+	 */
+	private void compact() {
+		int dropped = 0;
+		while (dropped < current - 1 && (actionList.size() - dropped > UNDO_HISTORY_ACTIONS || bytes > UNDO_HISTORY_BYTES)) {
+			bytes -= actionList.get(dropped).countedBytes;
+			dropped++;
+		}
+		if (dropped == 0)
+			return;
+		actionList.subList(0, dropped).clear();
+		current -= dropped;
+	}
+	
+	/*
+	 * What an action keeps reachable only changes when it's done or undone, so it's counted again then.
+	 */
+	private void recount(Action action) {
+		bytes -= action.countedBytes;
+		action.countedBytes = action.retainedBytes();
+		bytes += action.countedBytes;
+	}
+	
+	/*
+	 * Estimated memory the history keeps reachable beyond the scene.
+	 */
+	public synchronized long historyBytes() {
+		return bytes;
 	}
 	
 	public synchronized void undo() {
+		actionList.get(current - 1).undo();
 		current--;
-		actionList.get(current).undo();
+		recount(actionList.get(current));
+		if (journal != null)
+			journal.record();
 	}
 	
 	public synchronized void redo() {
 		actionList.get(current).redo();
+		recount(actionList.get(current));
+		if (journal != null)
+			journal.record();
 		current++;
 	}
 	
@@ -38,7 +38,31 @@ public class Parameters {
 	public final static float DIST_LINE_MOVE_END = 0.15f;
 	public final static int DIST_LINE_MOVE_END_MIN = 15;
 	
-	public final static int RECOGNITION_SLEEP = 1500;
+	public final static int RECOGNITION_SLEEP = 1500; //Longest wait for more strokes of a glyph.
+	public final static int RECOGNITION_MIN_IDLE = 250; //Shortest wait for more strokes of a glyph.
+	public final static int RECOGNITION_THREADS = 2;
+	public final static int RECOGNITION_QUEUE_SIZE = 16; //Recognition jobs waiting before further jobs are turned away.
+	public final static int RECOGNITION_RETRY = 100; //Wait before a job turned away by a full queue is queued again.
+	public final static int RECOGNITION_RETRIES = 5; //Times a job is queued again before its stroke is left unrecognised.
+	
+	/* Glyph images given to Tesseract, in pixels */
+	public final static int OCR_GLYPH_HEIGHT = 48;
+	public final static int OCR_MAX_GLYPH_WIDTH = 192;
+	public final static int OCR_MARGIN = 8;
+	public final static float OCR_STROKE_WIDTH = 3;
+	
+	public final static int DRAG_FRAME_DELAY = 16; //Milliseconds between recomputes while dragging.
+	public final static int PAINT_MARGIN = 3; //Pixels around a shape's outline that drawing it can touch.
+	
+	public final static String AUTOSAVE_DIR = ".spiderdrawer"; //Directory in the user's home the autosave is kept in.
+	public final static String AUTOSAVE_FILE = "autosave"; //Checkpoint and journal, with .spi and .spj added.
+	public final static int AUTOSAVE_CHECKPOINT_INTERVAL = 100; //Journal records between checkpoints.
+	
+	/* Budget of the undo history, beyond which the oldest actions can no longer be undone */
+	public final static int UNDO_HISTORY_ACTIONS = 500;
+	public final static long UNDO_HISTORY_BYTES = 32*1024*1024; //Estimated memory the history keeps reachable.
+	
+	public final static boolean ZONE_TEST_AREA = false; //Test zones with java.awt.geom.Area rather than Zones.exists.
 	
 	public final static int LABEL_CIRCLE_DISIRED_DIST = 20;
 }
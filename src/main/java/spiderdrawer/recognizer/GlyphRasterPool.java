@@ -0,0 +1,51 @@
+package spiderdrawer.recognizer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * Grey images for OCR, kept for reuse once released. Widths are rounded up to a multiple of 16
+ * so that glyphs of similar shape share images.
+ */
+class GlyphRasterPool {
+
+	private static final int WIDTH_STEP = 16;
+	private static final int MAX_IDLE = 4;
+
+	private final ConcurrentHashMap<Long, ConcurrentLinkedQueue<BufferedImage>> idle = new ConcurrentHashMap<Long, ConcurrentLinkedQueue<BufferedImage>>();
+
+	private static long key(int width, int height) {
+		return ((long) width << 32) | height;
+	}
+
+	static int roundWidth(int width) {
+		return ((Math.max(width, 1) + WIDTH_STEP - 1) / WIDTH_STEP) * WIDTH_STEP;
+	}
+
+	/*
+	 * A black image at least width wide (see roundWidth) and exactly height high.
+	 */
+	BufferedImage acquire(int width, int height) {
+		width = roundWidth(width);
+		ConcurrentLinkedQueue<BufferedImage> queue = idle.get(key(width, height));
+		BufferedImage image = (queue != null)? queue.poll() : null;
+		if (image == null)
+			return new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		Arrays.fill(((DataBufferByte) image.getRaster().getDataBuffer()).getData(), (byte) 0);
+		return image;
+	}
+
+	void release(BufferedImage image) {
+		long key = key(image.getWidth(), image.getHeight());
+		ConcurrentLinkedQueue<BufferedImage> queue = idle.get(key);
+		if (queue == null) {
+			idle.putIfAbsent(key, new ConcurrentLinkedQueue<BufferedImage>());
+			queue = idle.get(key);
+		}
+		if (queue.size() < MAX_IDLE)
+			queue.offer(image);
+	}
+}
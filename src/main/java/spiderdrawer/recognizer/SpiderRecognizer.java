@@ -1,30 +1,29 @@
 package spiderdrawer.recognizer;
 
 import java.awt.Rectangle;
-import java.util.ArrayList;
 
-import spiderdrawer.shape.Arrays;
 import spiderdrawer.shape.Box;
 import spiderdrawer.shape.Circle;
 import spiderdrawer.shape.Freeform;
 import spiderdrawer.shape.Label;
 import spiderdrawer.shape.Line;
 import spiderdrawer.shape.Point;
+import spiderdrawer.shape.ShapeList;
 import spiderdrawer.shape.interfaces.Shape;
 import static spiderdrawer.Parameters.*;
 
 
 public class SpiderRecognizer {
 
-    private final ArrayList<Shape> shapeList;
+    private final ShapeList shapeList;
     
-    public SpiderRecognizer(ArrayList<Shape> shapeList) {
+    public SpiderRecognizer(ShapeList shapeList) {
     	this.shapeList = shapeList;
     }
 	
 	public boolean closeToUnconnectedBox(Freeform[] freeforms) {
 		Freeform freeform = new Freeform(freeforms);
-		Box[] boxes = Arrays.boxArray(shapeList);
+		Box[] boxes = shapeList.boxArray();
 		for (int i = 0; i < boxes.length; i++) {
 			if (boxes[i].getConnective() != null)
 				continue;
@@ -41,7 +40,7 @@ public class SpiderRecognizer {
 	public boolean closeToUnlabeledCircle(Freeform[] freeforms) {
 		Freeform freeform = new Freeform(freeforms);
 		Point center = new Point((freeform.minX()+freeform.maxX())/2, (freeform.minY()+freeform.maxY())/2);
-		Circle[] circles = Arrays.circleArray(shapeList);
+		Circle[] circles = shapeList.circleArray();
 		for (int i = 0; i < circles.length; i++) {
 			if (circles[i].hasLabel())
 				continue;
@@ -106,7 +105,7 @@ public class SpiderRecognizer {
     	return new Rectangle(minX, minY, maxX - minX, maxY - minY);
 	}
 	
-	public static Shape checkLine(Freeform freeform, ArrayList<Shape> shapeList) {
+	public static Shape checkLine(Freeform freeform, ShapeList shapeList) {
 		Shape shape = Line.create(freeform, null);
 		double len = ((Line) shape).length();
 		if (len < 1) {
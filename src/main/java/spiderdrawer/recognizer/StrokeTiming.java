@@ -0,0 +1,46 @@
+package spiderdrawer.recognizer;
+
+import static spiderdrawer.Parameters.RECOGNITION_MIN_IDLE;
+import static spiderdrawer.Parameters.RECOGNITION_SLEEP;
+
+/*
+ * Learns how long the user pauses between strokes of the same glyph, to tell when a glyph is finished.
+ * Keeps a smoothed mean and mean deviation of the gaps, as TCP does for round trip times, and gives
+ * mean + 4 * deviation, kept between RECOGNITION_MIN_IDLE and RECOGNITION_SLEEP.
+ * Gaps of RECOGNITION_SLEEP or more are taken as the start of a new glyph and not learnt from.
+ */
+public class StrokeTiming {
+
+	private long lastPenUp = -1;
+	private double meanGap = -1;
+	private double deviation = 0;
+
+	public synchronized void penDown(long millis) {
+		if (lastPenUp < 0)
+			return;
+		long gap = millis - lastPenUp;
+		if (gap < 0 || gap >= RECOGNITION_SLEEP)
+			return;
+		if (meanGap < 0) {
+			meanGap = gap;
+			deviation = gap/2.0;
+		} else {
+			deviation = 0.75*deviation + 0.25*Math.abs(meanGap - gap);
+			meanGap = 0.875*meanGap + 0.125*gap;
+		}
+	}
+
+	public synchronized void penUp(long millis) {
+		lastPenUp = millis;
+	}
+
+	/*
+	 * Milliseconds without a new stroke after which a glyph is taken as finished.
+	 */
+	public synchronized long idleThreshold() {
+		if (meanGap < 0)
+			return RECOGNITION_SLEEP;
+		long threshold = Math.round(meanGap + 4*deviation);
+		return Math.max(RECOGNITION_MIN_IDLE, Math.min(RECOGNITION_SLEEP, threshold));
+	}
+}
@@ -0,0 +1,69 @@
+package spiderdrawer.recognizer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.sun.jna.Pointer;
+
+import net.sourceforge.tess4j.TessAPI;
+import net.sourceforge.tess4j.TessAPI.TessOcrEngineMode;
+import net.sourceforge.tess4j.TessAPI.TessPageSegMode;
+import net.sourceforge.tess4j.TesseractException;
+import net.sourceforge.vietocr.ImageIOHelper;
+
+/*
+ * One Tesseract engine set up once for a language and whitelist, and kept for every OCR call after.
+ * Tesseract.doOCR creates, initialises and deletes an engine on every call and is a single shared instance,
+ * so it has to be reconfigured for each kind of glyph. An engine must only be used by one thread at a time.
+ */
+class TessEngine {
+
+	private final TessAPI api = TessAPI.INSTANCE;
+	private final TessAPI.TessBaseAPI handle;
+	private ByteBuffer grayBuffer;
+
+	TessEngine(String datapath, String language, String whitelist) throws TesseractException {
+		handle = api.TessBaseAPICreate();
+		if (api.TessBaseAPIInit2(handle, datapath, language, TessOcrEngineMode.OEM_DEFAULT) != 0) {
+			api.TessBaseAPIDelete(handle);
+			throw new TesseractException("Could not initialise Tesseract for " + language + " from " + datapath + "/tessdata");
+		}
+		api.TessBaseAPISetPageSegMode(handle, TessPageSegMode.PSM_SINGLE_CHAR);
+		api.TessBaseAPISetVariable(handle, "tessedit_char_whitelist", whitelist);
+	}
+
+	String doOCR(BufferedImage image) throws TesseractException {
+		ByteBuffer buffer;
+		if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+			/* Grey pixels are already what Tesseract takes, so skip the TIFF round trip ImageIOHelper does. */
+			byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			if (grayBuffer == null || grayBuffer.capacity() < data.length)
+				grayBuffer = ByteBuffer.allocateDirect(data.length);
+			grayBuffer.clear();
+			grayBuffer.put(data);
+			grayBuffer.flip();
+			buffer = grayBuffer;
+		} else {
+			try {
+				buffer = ImageIOHelper.getImageByteBuffer(image);
+			} catch (IOException e) {
+				throw new TesseractException(e);
+			}
+		}
+		int bpp = image.getColorModel().getPixelSize();
+		int bytesPerLine = (int) Math.ceil(image.getWidth() * bpp / 8.0);
+		api.TessBaseAPISetImage(handle, buffer, image.getWidth(), image.getHeight(), bpp / 8, bytesPerLine);
+		Pointer text = api.TessBaseAPIGetUTF8Text(handle);
+		String result = text.getString(0);
+		api.TessDeleteText(text);
+		api.TessBaseAPIClear(handle);
+		return result;
+	}
+
+	void end() {
+		api.TessBaseAPIEnd(handle);
+		api.TessBaseAPIDelete(handle);
+	}
+}
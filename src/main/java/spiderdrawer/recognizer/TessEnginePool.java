@@ -0,0 +1,72 @@
+package spiderdrawer.recognizer;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.sourceforge.tess4j.TesseractException;
+
+/*
+ * Engines for one language and whitelist. Engines are created as they are needed, up to size,
+ * after which acquire waits for one to be released.
+ * After shutdown() the idle engines are ended, and the others as they are released.
+ */
+class TessEnginePool {
+
+	private final String datapath;
+	private final String language;
+	private final String whitelist;
+	private final int size;
+	private final LinkedBlockingQueue<TessEngine> idle = new LinkedBlockingQueue<TessEngine>();
+	private int created = 0;
+	private boolean shutdown = false;
+
+	TessEnginePool(String datapath, String language, String whitelist, int size) {
+		this.datapath = datapath;
+		this.language = language;
+		this.whitelist = whitelist;
+		this.size = size;
+	}
+
+	TessEngine acquire() throws InterruptedException, TesseractException {
+		TessEngine engine = idle.poll();
+		if (engine != null)
+			return engine;
+		boolean create = false;
+		synchronized (this) {
+			if (shutdown)
+				throw new TesseractException("Tesseract engines shut down");
+			if (created < size) {
+				created++;
+				create = true;
+			}
+		}
+		if (!create)
+			return idle.take();
+		try {
+			return new TessEngine(datapath, language, whitelist);
+		} catch (TesseractException | RuntimeException | Error e) {
+			synchronized (this) {
+				created--;
+			}
+			throw e;
+		}
+	}
+
+	void release(TessEngine engine) {
+		synchronized (this) {
+			if (!shutdown) {
+				idle.offer(engine);
+				return;
+			}
+		}
+		engine.end();
+	}
+	
+	void shutdown() {
+		synchronized (this) {
+			shutdown = true;
+		}
+		TessEngine engine;
+		while ((engine = idle.poll()) != null)
+			engine.end();
+	}
+}
@@ -1,27 +1,45 @@
 package spiderdrawer.recognizer;
 
+import java.awt.BasicStroke;
+import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-import java.awt.Rectangle;
 
 import com.sun.jna.Native;
 
 import spiderdrawer.shape.Freeform;
-import net.sourceforge.tess4j.TessAPI;
-import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
-import net.sourceforge.tess4j.TessAPI.TessPageSegMode;
+import static spiderdrawer.Parameters.OCR_GLYPH_HEIGHT;
+import static spiderdrawer.Parameters.OCR_MARGIN;
+import static spiderdrawer.Parameters.OCR_MAX_GLYPH_WIDTH;
+import static spiderdrawer.Parameters.OCR_STROKE_WIDTH;
+import static spiderdrawer.Parameters.RECOGNITION_THREADS;
 
 public class TessRecognizer {
 
-	private Tesseract instance;
+	private static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+	private static final String CONNECTIVES = "\u2194\u2192\u2228\u2227\u00AC"; /* equivalence, implication, or, and, not */
 	
+	/* One pool per language and whitelist, so engines are never reconfigured and groups can be read in parallel. */
+	private final TessEnginePool textEngines;
+	private final TessEnginePool connectiveEngines;
+	private final TessEnginePool letterEngines;
+	private final GlyphRasterPool rasters = new GlyphRasterPool();
 	
 	public TessRecognizer() {
-		
-		instance = Tesseract.getInstance();
-    	instance.setDatapath(".");
-    	instance.setPageSegMode(TessPageSegMode.PSM_SINGLE_CHAR);
+		textEngines = new TessEnginePool(".", "eng+conn", LETTERS + CONNECTIVES, RECOGNITION_THREADS);
+		connectiveEngines = new TessEnginePool(".", "conn", CONNECTIVES, RECOGNITION_THREADS);
+		letterEngines = new TessEnginePool(".", "eng", LETTERS, RECOGNITION_THREADS);
+	}
+	
+	/*
+	 * Ends the engines, once no more OCR is to be done.
+	 */
+	public void shutdown() {
+		textEngines.shutdown();
+		connectiveEngines.shutdown();
+		letterEngines.shutdown();
 	}
 	
 	public Character classifyText(Freeform[] freeforms) {
@@ -36,64 +54,78 @@ public class TessRecognizer {
     	return convertToChar(freeforms, false, true);
     }
 	
-	public static Rectangle rectangle(Freeform[] freeforms) {
-    	int maxX = Integer.MIN_VALUE;
-    	int maxY = Integer.MIN_VALUE;
-    	for (int i = 0; i < freeforms.length; i++) {
-    		int currentMaxX = freeforms[i].minX() + freeforms[i].maxX();
-    		if (currentMaxX > maxX) {	
-    			maxX = currentMaxX; 
-    		}
-    		int currentMaxY = freeforms[i].minY() + freeforms[i].maxY();
-    		if (currentMaxY > maxY) {
-    			maxY = currentMaxY; 
-    		}
-    	}    
-    	return new Rectangle(0, 0, maxX, maxY);
-	}
-	
 	private Character convertToChar(Freeform[] freeforms, boolean connective, boolean letter) {
     	System.out.println("num freeforms: " + freeforms.length);
-    	Rectangle rect = rectangle(freeforms);
-    	synchronized(this) {
-	    	if (connective && letter) {
-	    		instance.setTessVariable("tessedit_char_whitelist", "ABCDEFGHIJKLMNOPQRSTUVWXYZ↔→∨∧¬");
-	    		instance.setLanguage("eng+conn");
-	    	} else if (connective) {
-	    		instance.setTessVariable("tessedit_char_whitelist", "↔→∨∧¬");
-	    		instance.setLanguage("conn");
-	    	} else { //letter == true
-	    		instance.setTessVariable("tessedit_char_whitelist", "ABCDEFGHIJKLMNOPQRSTUVWXYZ");
-	    		instance.setLanguage("eng");
-	    	}
-	    	try {
-	    		System.out.println("about to do OCR");
-	    		String result = instance.doOCR(createImage(freeforms, (int) rect.getWidth(), (int) rect.getHeight()));
-	    		System.out.println("finished OCR");
-	            if (result.length() > 0) {
-	            	char character = '\0';
-	            	for(int i = 0; i < result.length(); i++) {
-	                    if(!Character.isWhitespace(result.charAt(i))) {
-	                    	character = result.charAt(i);
-	                    }
-	                }
-	            	System.out.println("\"" +result + "\"");
-	            	if (character != '\0') {
-	            		return character;
-	            	}
-	            }
-	        } catch (TesseractException e) {
-	            System.err.println(e.getMessage());
-	        }
+    	TessEnginePool pool;
+    	if (connective && letter) {
+    		pool = textEngines;
+    	} else if (connective) {
+    		pool = connectiveEngines;
+    	} else { //letter == true
+    		pool = letterEngines;
+    	}
+    	TessEngine engine;
+    	try {
+    		engine = pool.acquire();
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		return null;
+    	} catch (TesseractException e) {
+    		System.err.println(e.getMessage());
+    		return null;
+    	}
+    	BufferedImage image = glyphImage(freeforms);
+    	try {
+    		System.out.println("about to do OCR");
+    		String result = engine.doOCR(image);
+    		System.out.println("finished OCR");
+            if (result.length() > 0) {
+            	char character = '\0';
+            	for(int i = 0; i < result.length(); i++) {
+                    if(!Character.isWhitespace(result.charAt(i))) {
+                    	character = result.charAt(i);
+                    }
+                }
+            	System.out.println("\"" +result + "\"");
+            	if (character != '\0') {
+            		return character;
+            	}
+            }
+        } catch (TesseractException e) {
+            System.err.println(e.getMessage());
+        } finally {
+    		pool.release(engine);
+    		rasters.release(image);
     	}
     	return null;
     }
 	
-	public static BufferedImage createImage(Freeform[] freeforms, int width, int height) {
-        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = bufferedImage.createGraphics();
-        for (int i = 0; i < freeforms.length; i++)
-        	freeforms[i].draw(g);
-        return bufferedImage;
-    }
+	/*
+	 * The freeforms' bounding box only, scaled so the glyph is OCR_GLYPH_HEIGHT high (or at most OCR_MAX_GLYPH_WIDTH wide)
+	 * with an OCR_MARGIN border, drawn white on black as before.
+	 */
+	private BufferedImage glyphImage(Freeform[] freeforms) {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < freeforms.length; i++) {
+			minX = Math.min(minX, freeforms[i].minX());
+			minY = Math.min(minY, freeforms[i].minY());
+			maxX = Math.max(maxX, freeforms[i].maxX());
+			maxY = Math.max(maxY, freeforms[i].maxY());
+		}
+		int width = Math.max(maxX - minX, 1);
+		int height = Math.max(maxY - minY, 1);
+		double scale = Math.min(OCR_GLYPH_HEIGHT / (double) height, OCR_MAX_GLYPH_WIDTH / (double) width);
+		BufferedImage image = rasters.acquire((int) Math.ceil(width*scale) + 2*OCR_MARGIN, OCR_GLYPH_HEIGHT + 2*OCR_MARGIN);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.translate(OCR_MARGIN, OCR_MARGIN + (OCR_GLYPH_HEIGHT - height*scale)/2);
+		g.scale(scale, scale);
+		g.translate(-minX, -minY);
+		g.setStroke(new BasicStroke((float) (OCR_STROKE_WIDTH/scale), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+		for (int i = 0; i < freeforms.length; i++)
+			freeforms[i].draw(g);
+		g.dispose();
+		return image;
+	}
 }
@@ -7,6 +7,8 @@ import java.util.ArrayList;
 public class Arrays {
 
 	public static Box[] boxArray(ArrayList<Shape> shapeList) {
+		if (shapeList instanceof ShapeList)
+			return ((ShapeList) shapeList).boxArray();
 		ArrayList<Box> boxList = new ArrayList<Box>();
 		for (int i = 0; i < shapeList.size(); i++) {
 			if (shapeList.get(i) instanceof Box) {
@@ -17,6 +19,8 @@ public class Arrays {
 	}
 	
 	public static Circle[] circleArray(ArrayList<Shape> shapeList) {
+		if (shapeList instanceof ShapeList)
+			return ((ShapeList) shapeList).circleArray();
 		ArrayList<Circle> circleList = new ArrayList<Circle>();
 		for (int i = 0; i < shapeList.size(); i++) {
 			if (shapeList.get(i) instanceof Circle) {
@@ -27,6 +31,8 @@ public class Arrays {
 	}
 	
 	public static Connective[] connectiveArray(ArrayList<Shape> shapeList) {
+		if (shapeList instanceof ShapeList)
+			return ((ShapeList) shapeList).connectiveArray();
 		ArrayList<Connective> connectiveList = new ArrayList<Connective>();
 		for (int i = 0; i < shapeList.size(); i++) {
 			if (shapeList.get(i) instanceof Connective) {
@@ -38,6 +44,12 @@ public class Arrays {
 	
 	 public static ArrayList<Freeform> freeformList(ArrayList<Shape> shapeList) {
 	    	ArrayList<Freeform> freeforms = new ArrayList<Freeform>();
+	    	if (shapeList instanceof ShapeList) {
+	    		Freeform[] freeformArray = ((ShapeList) shapeList).freeformArray();
+	    		for (int i = 0; i < freeformArray.length; i++)
+	    			freeforms.add(freeformArray[i]);
+	    		return freeforms;
+	    	}
 	    	for (int i = 0; i < shapeList.size(); i++) {
 	    		if (shapeList.get(i) instanceof Freeform) {
 	    			freeforms.add((Freeform) shapeList.get(i));
@@ -47,6 +59,8 @@ public class Arrays {
 	    }
 	
 	public static Label[] labelArray(ArrayList<Shape> shapeList) {
+		if (shapeList instanceof ShapeList)
+			return ((ShapeList) shapeList).labelArray();
 		ArrayList<Label> labelList = new ArrayList<Label>();
 		for (int i = 0; i < shapeList.size(); i++) {
 			if (shapeList.get(i) instanceof Label) {
@@ -57,6 +71,8 @@ public class Arrays {
  	}
 	
 	public static Line[] lineArray(ArrayList<Shape> shapeList) {
+		if (shapeList instanceof ShapeList)
+			return ((ShapeList) shapeList).lineArray();
 		ArrayList<Line> lineList = new ArrayList<Line>();
 		for (int i = 0; i < shapeList.size(); i++) {
 			if (shapeList.get(i) instanceof Line) {
@@ -67,6 +83,8 @@ public class Arrays {
  	}
 	
 	public static Point[] pointArray(ArrayList<Shape> shapeList) {
+		if (shapeList instanceof ShapeList)
+			return ((ShapeList) shapeList).pointArray();
 		ArrayList<Point> pointList = new ArrayList<Point>();
 		for (int i = 0; i < shapeList.size(); i++) {
 			if (shapeList.get(i) instanceof Point) {
@@ -77,6 +95,8 @@ public class Arrays {
  	}
 	
 	public static Shading[] shadingArray(ArrayList<Shape> shapeList) {
+		if (shapeList instanceof ShapeList)
+			return ((ShapeList) shapeList).shadingArray();
 		ArrayList<Shading> shadingList = new ArrayList<Shading>();
 		for (int i = 0; i < shapeList.size(); i++) {
 			if (shapeList.get(i) instanceof Shading) {
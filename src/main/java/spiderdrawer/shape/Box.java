@@ -3,27 +3,28 @@ package spiderdrawer.shape;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
-import java.awt.geom.Area;
-import java.awt.geom.Ellipse2D;
 import java.util.ArrayList;
+import java.util.List;
 
 import spiderdrawer.exception.EmptyContainerException;
 import spiderdrawer.exception.InvalidShapeException;
+import spiderdrawer.shape.containers.Container;
 import spiderdrawer.shape.containers.MultiContainer;
 import spiderdrawer.shape.containers.SingleContainer;
 import spiderdrawer.shape.interfaces.Deletable;
 import spiderdrawer.shape.interfaces.Drawable;
 import spiderdrawer.shape.interfaces.Movable;
+import spiderdrawer.shape.interfaces.Related;
 import spiderdrawer.shape.interfaces.Shape;
 import static spiderdrawer.Parameters.*;
 
-public class Box implements Drawable, Movable, Deletable {
+public class Box implements Drawable, Movable, Deletable, Related {
 
 	Point topLeft;
 	int width;
 	int height;
 	char letter = '\0';
-	private ArrayList<Shape> shapeList;
+	ShapeList shapeList;
 	MultiContainer<Circle, Box> circles;
 	MultiContainer<Circle, Box> overlapCircles;
 	MultiContainer<Circle, Box> outerCircles;
@@ -40,6 +41,11 @@ public class Box implements Drawable, Movable, Deletable {
 	ArrayList<Shape> toMove;
 	MultiContainer<Spider, Box> spiders;
 	SingleContainer<Shading, Box> shading;
+	/* Bumped when the circles in the box, their geometry or their labels change, and the version the zone strings are from. */
+	private int zoneVersion;
+	private int cachedZoneVersion = -1;
+	private String cachedPresentZones;
+	private String cachedMissingZones;
 
 
 	public Box(Point topLeft, int width, int height) {
@@ -52,8 +58,52 @@ public class Box implements Drawable, Movable, Deletable {
 		this(new Point(topLeftX, topLeftY), width, height);
 	}
 	
-	private void createContainers() {
-		circles = new MultiContainer<Circle, Box>(this);
+	void createContainers() {
+		circles = new MultiContainer<Circle, Box>(this) {
+			@Override
+			public void add(Circle circle, Container<Box, Circle> c) {
+				super.add(circle, c);
+				zonesChanged();
+			}
+			
+			@Override
+			public void remove(Circle circle) {
+				if (circle != null)
+					circle.fillsChanged();
+				super.remove(circle);
+				zonesChanged();
+			}
+			
+			@Override
+			public void restore(Circle circle, Container<Box, Circle> c) {
+				super.restore(circle, c);
+				zonesChanged();
+			}
+			
+			@Override
+			public void drop(Circle circle) {
+				if (circle != null)
+					circle.fillsChanged();
+				super.drop(circle);
+				zonesChanged();
+			}
+			
+			@Override
+			public void clear() {
+				for (int i = 0; i < size(); i++)
+					get(i).fillsChanged();
+				super.clear();
+				zonesChanged();
+			}
+			
+			@Override
+			public void restore(List<Circle> circles, List<Container<Box, Circle>> cs) {
+				for (int i = 0; i < size(); i++)
+					get(i).fillsChanged();
+				super.restore(circles, cs);
+				zonesChanged();
+			}
+		};
 		overlapCircles = new MultiContainer<Circle, Box>(this);
 		outerCircles = new MultiContainer<Circle, Box>(this);
 		lines = new MultiContainer<Line, Box>(this);
@@ -69,7 +119,7 @@ public class Box implements Drawable, Movable, Deletable {
 		shading = new SingleContainer<Shading, Box>(this);
 	}
 	
-	public static Box create(int topLeftX, int topLeftY, int width, int height, ArrayList<Shape> shapeList) {
+	public static Box create(int topLeftX, int topLeftY, int width, int height, ShapeList shapeList) {
 		Box box = new Box(topLeftX, topLeftY, width, height);
 		box.createContainers();
 		box.shapeList = shapeList;
@@ -78,7 +128,7 @@ public class Box implements Drawable, Movable, Deletable {
 		return box;
 	}
 	
-	public static Box create(Freeform freeform, ArrayList<Shape> shapeList) {
+	public static Box create(Freeform freeform, ShapeList shapeList) {
 		int minX = freeform.minX();
 		int minY = freeform.minY();
 		return create(minX, minY, freeform.maxX() - minX, freeform.maxY() - minY, shapeList);
@@ -87,17 +137,19 @@ public class Box implements Drawable, Movable, Deletable {
 	public void resize(int width, int height) {
 		this.width = width;
 		this.height = height;
+		if (shapeList != null)
+			shapeList.update(this);
 	}
 	
 	protected Point getTopLeft() {
 		return topLeft;
 	}
 	
-	protected int getWidth() {
+	public int getWidth() {
 		return width;
 	}
 	
-	protected int getHeight() {
+	public int getHeight() {
 		return height;
 	}
 	
@@ -120,18 +172,11 @@ public class Box implements Drawable, Movable, Deletable {
 	}
 	
 	public boolean intersects(Point p) {
-		return (topLeft.x <= p.x && p.x <= topLeft.x + width) && (topLeft.y <= p.y && p.y <= topLeft.y + height);
+		return Geometry.rectContains(topLeft.x, topLeft.y, width, height, p.x, p.y);
 	}
 	
 	public double boundaryDistance(Point p) {
-		Point topRight = topRight();
-		Point bottomLeft = bottomLeft();
-		Point bottomRight = bottomRight();
-		Line top = new Line(topLeft, topRight);
-		Line bottom = new Line(bottomLeft, bottomRight);
-		Line left = new Line(topLeft, bottomLeft);
-		Line right = new Line(topRight, bottomRight);
-		return Math.min(Math.min(top.distance(p), bottom.distance(p)), Math.min(left.distance(p), right.distance(p)));
+		return Geometry.rectBoundaryDistance(topLeft.x, topLeft.y, width, height, p.x, p.y);
 	}
 	
 	public boolean isOverlapping() {
@@ -238,19 +283,50 @@ public class Box implements Drawable, Movable, Deletable {
 	}	
 	
 	public String missingZones() {
+		checkZoneCache();
+		if (cachedMissingZones != null)
+			return cachedMissingZones;
 		StringBuilder result = new StringBuilder();
-		checkZones(true, result, new ArrayList<Circle>(), 0);
+		appendZones(true, result);
 		if (result.length() > 1)
 			result.delete(result.length()-2, result.length());
-		return result.toString();
+		cachedMissingZones = result.toString();
+		return cachedMissingZones;
 	}
 	
 	public String presentZones() {
+		checkZoneCache();
+		if (cachedPresentZones != null)
+			return cachedPresentZones;
 		StringBuilder result = new StringBuilder();
-		checkZones(false, result, new ArrayList<Circle>(), 0);
+		appendZones(false, result);
 		if (result.length() > 1)
 			result.delete(result.length()-2, result.length());
-		return "[" + result.toString() +  "]";
+		cachedPresentZones = "[" + result.toString() +  "]";
+		return cachedPresentZones;
+	}
+	
+	void zonesChanged() {
+		zoneVersion++;
+		fillsChanged();
+	}
+	
+	/*
+	 * The fills of the shadings drawn in the box are built from it and its circles.
+	 */
+	void fillsChanged() {
+		if (shading.get() != null)
+			shading.get().fillChanged();
+		for (int i = 0; i < circles.size(); i++)
+			circles.get(i).fillsChanged();
+	}
+	
+	private void checkZoneCache() {
+		if (cachedZoneVersion != zoneVersion) {
+			cachedZoneVersion = zoneVersion;
+			cachedPresentZones = null;
+			cachedMissingZones = null;
+		}
 	}
 	
 	public void addZones(StringBuilder result, ArrayList<Circle> included) {
@@ -276,6 +352,20 @@ public class Box implements Drawable, Movable, Deletable {
 		}
 	}
 	
+	/*
+	 * Same zones, in the same order, as checkZones, falling back to it when the circles are too close to tangent.
+	 */
+	private void appendZones(boolean missing, StringBuilder result) {
+		Zones zones = Zones.compute(circles.list());
+		if (zones == null) {
+			checkZones(missing, result, new ArrayList<Circle>(), 0);
+			return;
+		}
+		ArrayList<ArrayList<Circle>> found = missing? zones.missing() : zones.present();
+		for (int i = 0; i < found.size(); i++)
+			addZones(result, found.get(i));
+	}
+	
 	public void checkZones(boolean missing, StringBuilder result, ArrayList<Circle> found, int done) {
 		for (int i = done; i < circles.size(); i++) {
 			found.add(circles.get(i));
@@ -290,24 +380,14 @@ public class Box implements Drawable, Movable, Deletable {
 		if (included.size() == 0)
 			return false;
 		Box box = included.get(0).boxes.get(0);
-		Area area = new Area(new Rectangle(box.topLeft.x, box.topLeft.y, box.width, box.height));
-		for (int i = 0; i < included.size(); i++) {
-			Circle circle = included.get(i);
-			area.intersect(new Area(new Ellipse2D.Float(circle.center.x-circle.radius, circle.center.y-circle.radius, circle.radius*2, circle.radius*2)));
-		}
 		@SuppressWarnings("unchecked")
 		ArrayList<Circle> excluded = (ArrayList<Circle>) box.circles.list().clone();
 		excluded.removeAll(included);
-		if (excluded != null) {
-			for (int i = 0; i < excluded.size(); i++) {
-				Circle circle = excluded.get(i);
-				area.subtract(new Area(new Ellipse2D.Float(circle.center.x-circle.radius, circle.center.y-circle.radius, circle.radius*2, circle.radius*2)));
-			}
-		}
+		boolean empty = Zones.isEmpty(new Rectangle(box.topLeft.x, box.topLeft.y, box.width, box.height), included, excluded);
 		if (missing)
-			return area.isEmpty();
+			return empty;
 		else
-			return !area.isEmpty();
+			return !empty;
 	}
 	
 	public boolean doesOverlap(ArrayList<Circle> list) {
@@ -348,6 +428,18 @@ public class Box implements Drawable, Movable, Deletable {
 	    	}
 	}
 	
+	@Override
+	public void relationsChanging() {
+		if (shapeList != null)
+			shapeList.relationsChanging(this);
+	}
+	
+	@Override
+	public void relationsChanged() {
+		if (shapeList != null)
+			shapeList.relationsChanged(this);
+	}
+	
 	@Override
 	public boolean isValid() {
 		return completeConnectives() && !isOverlapping() && !(containsSpider() && !innerBoxes.isEmpty()) && outerCircles.isEmpty() && (singleInnerConnective() || innerConnectives.isEmpty());
@@ -372,14 +464,18 @@ public class Box implements Drawable, Movable, Deletable {
 					for (int i = 0; i < circles.size(); i++) {
 						circles.get(i).move(from, to, true);
 					}
-					for (int i = 0; i < circles.size(); i++) {
-						circles.get(i).recompute(false);
+					if (shapeList != null) {
+						for (int i = 0; i < circles.size(); i++) {
+							shapeList.schedule(circles.get(i), false);
+						}
 					}
 					for (int i = 0; i < spiders.size(); i++) {
 						spiders.get(i).move(from, to);
 					}
-					for (int i = 0; i < spiders.size(); i++) {
-						spiders.get(i).recompute(false);
+					if (shapeList != null) {
+						for (int i = 0; i < spiders.size(); i++) {
+							shapeList.schedule(spiders.get(i), false);
+						}
 					}
 				}
 				if (circles == null || circles.size() == 0) {
@@ -393,6 +489,8 @@ public class Box implements Drawable, Movable, Deletable {
 					connective.set(null, null);
 				}
 			}
+			if (shapeList != null)
+				shapeList.update(this);
 		} else {
 			move(from, to);
 		}
@@ -400,21 +498,18 @@ public class Box implements Drawable, Movable, Deletable {
 
 	@Override
 	public void move(Point from, Point to) {
-		Point topRight = topRight();
-		Point bottomLeft = bottomLeft();
-		Point bottomRight = bottomRight();
-		Line top = new Line(topLeft, topRight);
-		Line left = new Line(topLeft, bottomLeft);
-		Line right = new Line(topRight, bottomRight);
-		Line bottom = new Line(bottomLeft, bottomRight);
-		double distTop = top.distanceAlongLine(from);
-		double distLeft = left.distanceAlongLine(from);
-		double distRight = right.distanceAlongLine(from);
-		double distBottom = bottom.distanceAlongLine(from);
-		double distTopAllowed = Math.min(DIST_LINE_MOVE_END,DIST_LINE_MOVE_END_MIN/top.length());
-		double distRightAllowed = Math.min(DIST_LINE_MOVE_END,DIST_LINE_MOVE_END_MIN/right.length());
-		double distLeftAllowed = Math.min(DIST_LINE_MOVE_END,DIST_LINE_MOVE_END_MIN/left.length());
-		double distBottomAllowed = Math.min(DIST_LINE_MOVE_END,DIST_LINE_MOVE_END_MIN/bottom.length());
+		int left = topLeft.x;
+		int top = topLeft.y;
+		int right = topLeft.x + width;
+		int bottom = topLeft.y + height;
+		double distTop = Geometry.distanceAlongSegment(left, top, right, top, from.x, from.y);
+		double distLeft = Geometry.distanceAlongSegment(left, top, left, bottom, from.x, from.y);
+		double distRight = Geometry.distanceAlongSegment(right, top, right, bottom, from.x, from.y);
+		double distBottom = Geometry.distanceAlongSegment(left, bottom, right, bottom, from.x, from.y);
+		double distTopAllowed = Math.min(DIST_LINE_MOVE_END,DIST_LINE_MOVE_END_MIN/Geometry.distance(left, top, right, top));
+		double distRightAllowed = Math.min(DIST_LINE_MOVE_END,DIST_LINE_MOVE_END_MIN/Geometry.distance(right, top, right, bottom));
+		double distLeftAllowed = Math.min(DIST_LINE_MOVE_END,DIST_LINE_MOVE_END_MIN/Geometry.distance(left, top, left, bottom));
+		double distBottomAllowed = Math.min(DIST_LINE_MOVE_END,DIST_LINE_MOVE_END_MIN/Geometry.distance(left, bottom, right, bottom));
 		if (distRight > 1-distRightAllowed && distBottom > 1-distBottomAllowed) { //Bottom right corner
 			width += to.x - from.x;
 			height += to.y - from.y;
@@ -434,6 +529,8 @@ public class Box implements Drawable, Movable, Deletable {
 		} else {
 			move(from, to, true);
 		}
+		if (shapeList != null)
+			shapeList.update(this);
 	}
 		
 	private void computeInnerBoxes(Box[] boxes) {
@@ -611,7 +708,7 @@ public class Box implements Drawable, Movable, Deletable {
 	
 	private void computeInnerConnectives(Connective[] connectives) {
 		for (int i = 0; i < innerConnectives.size(); i++)
-			innerConnectives.get(i).computeOuterBoxes(Arrays.boxArray(shapeList));
+			innerConnectives.get(i).computeOuterBoxes(shapeList.boxesNear(innerConnectives.get(i), 0));
 		innerConnectives.removeAll();
 		for (int i = 0; i < connectives.length; i++) {
 			if (this.contains(connectives[i]) && !innerBoxesContains(connectives[i])) {
@@ -629,7 +726,7 @@ public class Box implements Drawable, Movable, Deletable {
 		}
 	}
 	
-	private void computeShading() {
+	void computeShading() {
 		if (shading.get() == null && outerBox.get() != null && outerBox.get().shading.get() != null) {
 			shading.set(outerBox.get().shading.get(), outerBox.get().shading.get().box);
 		}
@@ -640,24 +737,24 @@ public class Box implements Drawable, Movable, Deletable {
 		if (shapeList == null)
 			return;
 		if (!moving) {
-			computeInnerBoxes(Arrays.boxArray(shapeList));
-			computeOuterBox(Arrays.boxArray(shapeList));
-			computeCircles(Arrays.circleArray(shapeList));
+			computeInnerBoxes(shapeList.boxesNear(this, 0));
+			computeOuterBox(shapeList.boxesNear(this, 0));
+			computeCircles(shapeList.circlesNear(this, 0));
 			for (int i = 0; i < this.circles.size(); i++) {
-				this.circles.get(i).computeLabels(Arrays.labelArray(shapeList));
+				this.circles.get(i).computeLabels(shapeList.labelsNear(this.circles.get(i), LABEL_CIRCLE_DIST));
 			}
-			computeLabels(Arrays.labelArray(shapeList));
+			computeLabels(shapeList.labelsNear(this, 0));
 			for (int i = 0; i < this.labels.size(); i++) {
-				this.labels.get(i).computeLabels(Arrays.labelArray(shapeList));
+				this.labels.get(i).computeLabels(shapeList.labelArray());
 			}
-			computeLines(Arrays.lineArray(shapeList));
-			computePoints(Arrays.pointArray(shapeList));
+			computeLines(shapeList.linesNear(this, 0));
+			computePoints(shapeList.pointsNear(this, 0));
 		}
-		computeInnerConnectives(Arrays.connectiveArray(shapeList));
-		computeConnectives(Arrays.connectiveArray(shapeList));
-		computeOverlapCircles(Arrays.circleArray(shapeList));
-		computeOverlapLines(Arrays.lineArray(shapeList));
-		computeOverlapBoxes(Arrays.boxArray(shapeList));
+		computeInnerConnectives(shapeList.connectivesNear(this, 0));
+		computeConnectives(shapeList.connectivesNear(this, CONNECTIVE_BOX_DIST));
+		computeOverlapCircles(shapeList.circlesNear(this, 0));
+		computeOverlapLines(shapeList.linesNear(this, 0));
+		computeOverlapBoxes(shapeList.boxesNear(this, 0));
 		computeSpiders();	
 		if (outerBox.get() != null)
 			for (int j = 0; j < outerBox.get().spiders.size(); j++) {
@@ -671,7 +768,7 @@ public class Box implements Drawable, Movable, Deletable {
 	
 	protected void checkLetter() {
 		if (letter == '\0') {
-			Box[] boxes = Arrays.boxArray(shapeList);
+			Box[] boxes = shapeList.boxArray();
 			ArrayList<Character> letters = new ArrayList<Character>(); 
 			for (int i = 0; i < boxes.length; i++) {
 				boxes[i].clearLetter();
@@ -681,7 +778,7 @@ public class Box implements Drawable, Movable, Deletable {
 			for (int i = 0; i < 26; i++) {
 				char possibleChar = (char) ('S' + ((i < 8)? i : i - 26));
 				if (!letters.contains(new Character(possibleChar))) {
-					letter = possibleChar;
+					setLetter(possibleChar);
 					break;
 				}
 			}
@@ -697,7 +794,18 @@ public class Box implements Drawable, Movable, Deletable {
 	
 	private void clearLetter() {
 		if (spiders.size() == 0)
-			letter = '\0';
+			setLetter('\0');
+	}
+	
+	/*
+	 * The letter is kept with the box's relations, as it's given out by them.
+	 */
+	private void setLetter(char letter) {
+		if (this.letter == letter)
+			return;
+		relationsChanging();
+		this.letter = letter;
+		relationsChanged();
 	}
 	
 	private void addSpider(Spider spider) {
@@ -720,13 +828,13 @@ public class Box implements Drawable, Movable, Deletable {
 			}
 		}
 		if (spiders.size() == 0)
-			letter = '\0';
+			setLetter('\0');
 	}
 	
 	protected boolean contains(Box box) {
 		if (this.equals(box))
 			return false;
-		return (this.topLeft.x < box.topLeft.x && this.topLeft.x + this.width > box.topLeft.x + box.width && this.topLeft.y < box.topLeft.y && this.topLeft.y + this.height > box.topLeft.y + box.height);
+		return contains(box.topLeft.x, box.topLeft.y, box.width, box.height);
 	}
 	
 	protected boolean contains(Circle circle) {
@@ -736,14 +844,18 @@ public class Box implements Drawable, Movable, Deletable {
 	}
 	
 	protected boolean contains(Point point) {
-		boolean withinXDir = (topLeft.x < point.x) && (point.x < topLeft.x + width);
-		boolean withinYDir = (topLeft.y < point.y) && (point.y < topLeft.y + height);
+		return contains(point.x, point.y);
+	}
+	
+	private boolean contains(int x, int y) {
+		boolean withinXDir = (topLeft.x < x) && (x < topLeft.x + width);
+		boolean withinYDir = (topLeft.y < y) && (y < topLeft.y + height);
 		return withinXDir && withinYDir;
 	}
 	
 	protected boolean contains(Freeform freeform) {
-		for (int i = 0; i < freeform.points.size(); i++) {
-			if (!contains(freeform.points.get(i)))
+		for (int i = 0; i < freeform.size; i++) {
+			if (!contains(freeform.xs[i], freeform.ys[i]))
 				return false;
 		}
 		return true;
@@ -754,79 +866,48 @@ public class Box implements Drawable, Movable, Deletable {
 	}
 	
 	protected boolean contains(Connective connective) {
-		Box connectiveBox = new Box(connective.center.x - connective.width/2, connective.center.y - connective.height/2,connective.width, connective.height);
-		return this.contains(connectiveBox);
+		return contains(connective.center.x - connective.width/2, connective.center.y - connective.height/2, connective.width, connective.height);
 	}
 	
 	protected boolean contains(Label label) {
-		Box box = new Box(label.center.x - label.width/2, label.center.y - label.height/2, label.width, label.height);
-		return this.contains(box);
+		return contains(label.center.x - label.width/2, label.center.y - label.height/2, label.width, label.height);
 	}
 	
-	protected Point topRight() {
-		return new Point(topLeft.x+width, topLeft.y);
-	}
-	
-	protected Point bottomLeft() {
-		return new Point(topLeft.x, topLeft.y+height);
-	}
-	
-	protected Point bottomRight() {
-		return new Point(topLeft.x+width, topLeft.y+height);
+	private boolean contains(int x, int y, int width, int height) {
+		return (this.topLeft.x < x && this.topLeft.x + this.width > x + width && this.topLeft.y < y && this.topLeft.y + this.height > y + height);
 	}
 	
 	protected boolean intersects(Box box) {
 		if (this.equals(box))
 			return false;
-		Point topRight = new Point(topLeft.x + width, topLeft.y);
-		Point bottomLeft = new Point(topLeft.x, topLeft.y + height);
-		Point bottomRight = new Point(topLeft.x + width, topLeft.y + height);
-		Line top = new Line(topLeft, topRight);
-		Line bottom = new Line(bottomLeft, bottomRight);
-		Line left = new Line(topLeft, bottomLeft);
-		Line right = new Line(topRight, bottomRight);
-		return box.intersects(top) || box.intersects(bottom) || box.intersects(left) || box.intersects(right);
+		int right = topLeft.x + width;
+		int bottom = topLeft.y + height;
+		return box.intersects(topLeft.x, topLeft.y, right, topLeft.y) || box.intersects(topLeft.x, bottom, right, bottom)
+				|| box.intersects(topLeft.x, topLeft.y, topLeft.x, bottom) || box.intersects(right, topLeft.y, right, bottom);
 	}
 	
 	protected boolean intersects(Circle circle) {
-		Point topRight = new Point(topLeft.x + width, topLeft.y);
-		Point bottomLeft = new Point(topLeft.x, topLeft.y + height);
-		Point bottomRight = new Point(topLeft.x + width, topLeft.y + height);
-		Line top = new Line(topLeft, topRight);
-		Line bottom = new Line(bottomLeft, bottomRight);
-		Line left = new Line(topLeft, bottomLeft);
-		Line right = new Line(topRight, bottomRight);
-		return circle.intersects(top) || circle.intersects(bottom) || circle.intersects(left) || circle.intersects(right);
+		return Geometry.rectIntersectsCircle(topLeft.x, topLeft.y, width, height, circle.center.x, circle.center.y, circle.radius);
 	}
 	
 	protected double distance(Connective connective) {
-		Point topRight = new Point(topLeft.x + width, topLeft.y);
-		Point bottomLeft = new Point(topLeft.x, topLeft.y + height);
-		Point bottomRight = new Point(topLeft.x + width, topLeft.y + height);
-		Line top = new Line(topLeft, topRight);
-		Line bottom = new Line(bottomLeft, bottomRight);
-		Line left = new Line(topLeft, bottomLeft);
-		Line right = new Line(topRight, bottomRight);
-		return Math.min(Math.min(top.distance(connective.center), bottom.distance(connective.center)), Math.min(left.distance(connective.center), right.distance(connective.center)));
+		return Geometry.rectBoundaryDistance(topLeft.x, topLeft.y, width, height, connective.center.x, connective.center.y);
 	}
 	
 	protected double leftDistance(Connective connective) {
-		Point bottomLeft = new Point(topLeft.x, topLeft.y + height);
-		Line left = new Line(topLeft, bottomLeft);
-		Point closest = connective.center.plus(new Point(connective.width/2,0));
-		if (left.start.x >= closest.x && topLeft.y <= closest.y-connective.width/2 && bottomLeft.y >= closest.y+connective.width/2) { //connective is left of line.
-			return left.distance(connective.center);
+		int closestX = connective.center.x + connective.width/2;
+		int closestY = connective.center.y;
+		if (topLeft.x >= closestX && topLeft.y <= closestY-connective.width/2 && topLeft.y + height >= closestY+connective.width/2) { //connective is left of line.
+			return Geometry.segmentPointDistance(topLeft.x, topLeft.y, topLeft.x, topLeft.y + height, connective.center.x, connective.center.y);
 		}
 		return Double.MAX_VALUE;
 	}
 
 	protected double rightDistance(Connective connective) {
-		Point topRight = new Point(topLeft.x + width, topLeft.y);
-		Point bottomRight = new Point(topLeft.x + width, topLeft.y + height);
-		Line right = new Line(topRight, bottomRight);
-		Point closest = connective.center.minus(new Point(connective.width/2,0));
-		if (right.start.x <= closest.x && topLeft.y <= closest.y-connective.width/2 && bottomRight.y >= closest.y+connective.width/2 ) {//connective is right of line. 
-			return right.distance(connective.center);
+		int closestX = connective.center.x - connective.width/2;
+		int closestY = connective.center.y;
+		if (topLeft.x + width <= closestX && topLeft.y <= closestY-connective.width/2 && topLeft.y + height >= closestY+connective.width/2 ) {//connective is right of line. 
+			return Geometry.segmentPointDistance(topLeft.x + width, topLeft.y, topLeft.x + width, topLeft.y + height, connective.center.x, connective.center.y);
 		}
 		return Double.MAX_VALUE;
 	}
@@ -835,11 +916,8 @@ public class Box implements Drawable, Movable, Deletable {
     	int minY = freeform.minY();
     	int maxX = freeform.maxX();
     	int maxY = freeform.maxY();
-    	Point bottomLeft = new Point(topLeft.x, topLeft.y + height);
-		Line left = new Line(topLeft, bottomLeft);
-		Point closest = new Point(maxX, (minY+maxY)/2);
-		if (left.start.x >= closest.x) {//freeform is right of line. 
-			return left.distance(closest);
+		if (topLeft.x >= maxX) {//freeform is right of line. 
+			return Geometry.segmentPointDistance(topLeft.x, topLeft.y, topLeft.x, topLeft.y + height, maxX, (minY+maxY)/2);
 		}
 		return Double.MAX_VALUE;
 	}
@@ -848,12 +926,8 @@ public class Box implements Drawable, Movable, Deletable {
 		int minX = freeform.minX();
     	int minY = freeform.minY();
     	int maxY = freeform.maxY();
-		Point topRight = new Point(topLeft.x + width, topLeft.y);
-		Point bottomRight = new Point(topLeft.x + width, topLeft.y + height);
-		Line right = new Line(topRight, bottomRight);
-		Point closest = new Point(minX, (minY+maxY)/2);
-		if (right.start.x <= closest.x) {//freeform is right of line. 
-			return right.distance(closest);
+		if (topLeft.x + width <= minX) {//freeform is right of line. 
+			return Geometry.segmentPointDistance(topLeft.x + width, topLeft.y, topLeft.x + width, topLeft.y + height, minX, (minY+maxY)/2);
 		}
 		return Double.MAX_VALUE;
 	}
@@ -865,14 +939,11 @@ public class Box implements Drawable, Movable, Deletable {
 
 	@Override
 	public boolean intersects(Line line) {
-		Point topRight = new Point(topLeft.x + width, topLeft.y);
-		Point bottomLeft = new Point(topLeft.x, topLeft.y + height);
-		Point bottomRight = new Point(topLeft.x + width, topLeft.y + height);
-		Line top = new Line(topLeft, topRight);
-		Line bottom = new Line(bottomLeft, bottomRight);
-		Line left = new Line(topLeft, bottomLeft);
-		Line right = new Line(topRight, bottomRight);
-		return (top.intersects(line) || bottom.intersects(line) || left.intersects(line) || right.intersects(line));
+		return intersects(line.start.x, line.start.y, line.end.x, line.end.y);
+	}
+	
+	boolean intersects(int x1, int y1, int x2, int y2) {
+		return Geometry.rectIntersectsSegment(topLeft.x, topLeft.y, width, height, x1, y1, x2, y2);
 	}
 
 	@Override
@@ -884,28 +955,29 @@ public class Box implements Drawable, Movable, Deletable {
 		overlapLines.removeAll();
 		connective.set(null, null);
 		innerBoxes.removeAll();
-		for (int i = labels.size()-1; i >= 0; i--)
-			labels.get(i).recompute(false);
+		if (shapeList != null) {
+			for (int i = labels.size()-1; i >= 0; i--)
+				shapeList.schedule(labels.get(i), false);
+		}
 		labels.removeAll();
 		points.removeAll();
-		if (outerBox.get() != null)
-			outerBox.get().recompute(false);
+		if (shapeList != null && outerBox.get() != null)
+			shapeList.schedule(outerBox.get(), false);
 		outerBox.set(null, null);	
-		for (int i = innerConnectives.size()-1; i >= 0; i--)
-			innerConnectives.get(i).recompute(false);
+		if (shapeList != null) {
+			for (int i = innerConnectives.size()-1; i >= 0; i--)
+				shapeList.schedule(innerConnectives.get(i), false);
+		}
 		innerConnectives.removeAll();
 		overlapBoxes.removeAll();
 		
-		for (int i = 0; i < spiders.size(); i++) {
-			int size = spiders.size();
-			spiders.get(i).recompute(false);
-			if (spiders.size() < size) {
-				i--;
-			}
+		if (shapeList != null) {
+			for (int i = 0; i < spiders.size(); i++)
+				shapeList.schedule(spiders.get(i), false);
 		}
-		
 		spiders.removeAll();
-		shapeList.remove(shading.get());
+		if (shapeList != null)
+			shapeList.remove(shading.get());
 		shading.set(null, null);
 	}
 }
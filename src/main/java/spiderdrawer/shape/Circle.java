@@ -2,21 +2,21 @@ package spiderdrawer.shape;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.util.ArrayList;
 
+import spiderdrawer.shape.containers.Container;
 import spiderdrawer.shape.containers.MultiContainer;
 import spiderdrawer.shape.containers.SingleContainer;
 import spiderdrawer.shape.interfaces.Deletable;
 import spiderdrawer.shape.interfaces.Drawable;
 import spiderdrawer.shape.interfaces.Movable;
-import spiderdrawer.shape.interfaces.Shape;
+import spiderdrawer.shape.interfaces.Related;
 import static spiderdrawer.Parameters.*;
 
-public class Circle implements Drawable, Movable, Deletable {
+public class Circle implements Drawable, Movable, Deletable, Related {
 
 	Point center;
 	int radius;
-	private ArrayList<Shape> shapeList;
+	ShapeList shapeList;
 	SingleContainer<Label, Circle> label;
 	boolean moveLabel;
 	MultiContainer<Point, Circle> points;
@@ -37,7 +37,19 @@ public class Circle implements Drawable, Movable, Deletable {
 	}
 	
 	private void createContainers() {
-		label = new SingleContainer<Label, Circle>(this);
+		label = new SingleContainer<Label, Circle>(this) {
+			@Override
+			public void set(Label l, Container<Circle, Label> c) {
+				super.set(l, c);
+				zonesChanged();
+			}
+			
+			@Override
+			public void restore(Label l, Container<Circle, Label> c) {
+				super.restore(l, c);
+				zonesChanged();
+			}
+		};
 		points = new MultiContainer<Point, Circle>(this);
 		shadings = new MultiContainer<Shading, Circle>(this);
 		boxes = new MultiContainer<Box, Circle>(this);
@@ -46,7 +58,21 @@ public class Circle implements Drawable, Movable, Deletable {
 		overlapCircles = new MultiContainer<Circle, Circle>(this);
 	}
 	
-	public static Circle create(int centerX, int centerY, int radius, ArrayList<Shape> shapeList) {
+	/*
+	 * The zones of the boxes the circle is in depend on its geometry and label, and so do the fills of its shadings.
+	 */
+	void zonesChanged() {
+		for (int i = 0; i < boxes.size(); i++)
+			boxes.get(i).zonesChanged();
+		fillsChanged();
+	}
+	
+	void fillsChanged() {
+		for (int i = 0; i < shadings.size(); i++)
+			shadings.get(i).fillChanged();
+	}
+	
+	public static Circle create(int centerX, int centerY, int radius, ShapeList shapeList) {
 		radius = Math.max(radius,MIN_CIRCLE_RADIUS);
 		Circle circle = new Circle(centerX, centerY, radius);
 		circle.createContainers();
@@ -55,7 +81,7 @@ public class Circle implements Drawable, Movable, Deletable {
 		return circle;
 	}
 	
-	public static Circle create(Freeform freeform, ArrayList<Shape> shapeList) {
+	public static Circle create(Freeform freeform, ShapeList shapeList) {
 		int x = (freeform.minX() + freeform.maxX())/2;
 		int y = (freeform.minY() + freeform.maxY())/2;
 		int r = (x - freeform.minX() + y - freeform.minY())/2;
@@ -76,13 +102,11 @@ public class Circle implements Drawable, Movable, Deletable {
 	
 	
 	protected boolean contains(Freeform freeform) {
-		if (freeform.points.size() < 2)
+		if (freeform.size < 2)
 			return false;
 		
-		for (int i = 0; i < freeform.points.size()-1; i++) {
-			Point p1 = freeform.points.get(i);
-			Point p2 = freeform.points.get(i+1);
-			if (this.distance(new Line(p1, p2)) > 0) {
+		for (int i = 0; i < freeform.size-1; i++) {
+			if (distance(freeform, i) > 0) {
 				return false;
 			}
 		}
@@ -95,20 +119,24 @@ public class Circle implements Drawable, Movable, Deletable {
 	}
 	
 	protected boolean contains(Point point) {
-		return (center.distance(point) < radius);
+		return contains(point.x, point.y);
+	}
+	
+	private boolean contains(int x, int y) {
+		return (Geometry.distance(center.x, center.y, x, y) < radius);
 	}
 	
 	protected boolean contains(Box box) {
-		return this.contains(box.getTopLeft()) && this.contains(box.topRight()) && this.contains(box.bottomLeft()) && this.contains(box.bottomRight());
+		int right = box.topLeft.x + box.width;
+		int bottom = box.topLeft.y + box.height;
+		return contains(box.topLeft.x, box.topLeft.y) && contains(right, box.topLeft.y) && contains(box.topLeft.x, bottom) && contains(right, bottom);
 		
 	}
 	
 	protected double distance(Freeform freeform) {
 		double minDist = Double.MAX_VALUE;
-		for (int i = 0; i < freeform.points.size()-1; i++) {
-			Point p1 = freeform.points.get(i);
-			Point p2 = freeform.points.get(i+1);
-			double dist = this.distance(new Line(p1, p2));
+		for (int i = 0; i < freeform.size-1; i++) {
+			double dist = distance(freeform, i);
 			if (dist < minDist) {
 				minDist = dist;
 			}
@@ -120,6 +148,14 @@ public class Circle implements Drawable, Movable, Deletable {
 		return l.distance(this);
 	}
 	
+	/*
+	 * Distance to the freeform's segment from point i to point i+1, as distance(Line) gives.
+	 */
+	private double distance(Freeform freeform, int i) {
+		double dist = Geometry.segmentPointDistance(freeform.xs[i], freeform.ys[i], freeform.xs[i+1], freeform.ys[i+1], center.x, center.y);
+		return Math.max(0, dist - radius);
+	}
+	
 	protected double distance(Point p) {
 		return Math.max(0, signedDistance(p));
 	}
@@ -144,6 +180,18 @@ public class Circle implements Drawable, Movable, Deletable {
 		return center.x + "," + center.y + "," + radius;
 	}
 	
+	@Override
+	public void relationsChanging() {
+		if (shapeList != null)
+			shapeList.relationsChanging(this);
+	}
+	
+	@Override
+	public void relationsChanged() {
+		if (shapeList != null)
+			shapeList.relationsChanged(this);
+	}
+	
 	@Override
 	public boolean isValid() {
 		return hasLabel() && overlapBoxes.isEmpty() && innerBoxes.isEmpty();
@@ -163,6 +211,8 @@ public class Circle implements Drawable, Movable, Deletable {
 	public void move(Point from, Point to, boolean external) {
 		if (external) {
 			center.move(from, to);
+			if (shapeList != null)
+				shapeList.update(this);
 			if (label.get() != null) {
 				if (moveLabel) {
 					label.get().move(from, to);
@@ -178,7 +228,7 @@ public class Circle implements Drawable, Movable, Deletable {
 	@Override
 	public void move(Point from, Point to) {
 		move(from, to, true);
-		if (points != null) {
+		if (points != null && shapeList != null) {
 			for (int i = 0; i < points.size(); i++) {
 				points.get(i).move(from, to);
 			}
@@ -252,12 +302,12 @@ public class Circle implements Drawable, Movable, Deletable {
 		if (shapeList == null)
 			return;
 		if (!moving) {
-			computeLabels(Arrays.labelArray(shapeList));
-			computePoints(Arrays.pointArray(shapeList));
+			computeLabels(shapeList.labelsNear(this, LABEL_CIRCLE_DIST));
+			computePoints(shapeList.pointsNear(this, 0));
 		}
-		computeOverlapBoxes(Arrays.boxArray(shapeList));
-		computeOverlapCircles(Arrays.circleArray(shapeList));
-		computeBoxes(Arrays.boxArray(shapeList));
+		computeOverlapBoxes(shapeList.boxesNear(this, 0));
+		computeOverlapCircles(shapeList.circlesNear(this, 0));
+		computeBoxes(shapeList.boxesNear(this, 0));
 		if (!moving) {
 			moveLabel = true;
 		}
@@ -276,30 +326,7 @@ public class Circle implements Drawable, Movable, Deletable {
 	 */
 	@Override
 	public boolean intersects(Line line) {
-		Point d = line.end.minus(line.start);
-		if (d.x == 0 && d.y == 0) {
-			return line.start.distance(center) == radius;
-		}
-		Point sMc = line.start.minus(center);
-		double a = d.dot(d);
-		double b = 2*d.dot(sMc);
-		double c = sMc.dot(sMc) - radius*radius;
-		
-		double disc = b*b-4*a*c;
-		if (disc < 0)	//Imaginary solutions
-			return false;
-		
-		double sqrt_disc = Math.sqrt(disc);
-		
-		double t1 = (-b + sqrt_disc)/(2*a);
-		if (t1 >= 0 && t1 <= 1)
-			return true;
-		
-		double t2 = (-b - sqrt_disc)/(2*a);
-		if (t2 >= 0 && t2 <= 1)
-			return true;
-		
-		return false;
+		return Geometry.segmentIntersectsCircle(line.start.x, line.start.y, line.end.x, line.end.y, center.x, center.y, radius);
 	}
 	
 	public boolean intersects(Freeform freeform) {
@@ -313,9 +340,9 @@ public class Circle implements Drawable, Movable, Deletable {
 	@Override
 	public void remove() {
 		label.set(null, null);
-		if (points != null) {
+		if (points != null && shapeList != null) {
 			for (int i = 0; i < points.size(); i++) {
-				points.get(i).recompute(false);
+				shapeList.schedule(points.get(i), false);
 			}
 		}
 		points.removeAll();
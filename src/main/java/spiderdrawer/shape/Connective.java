@@ -6,7 +6,6 @@ import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
-import java.util.ArrayList;
 
 import javax.swing.UIManager;
 
@@ -14,15 +13,15 @@ import spiderdrawer.shape.containers.SingleContainer;
 import spiderdrawer.shape.interfaces.Deletable;
 import spiderdrawer.shape.interfaces.Drawable;
 import spiderdrawer.shape.interfaces.Movable;
-import spiderdrawer.shape.interfaces.Shape;
+import spiderdrawer.shape.interfaces.Related;
 
-public class Connective implements Drawable, Movable, Deletable {
+public class Connective implements Drawable, Movable, Deletable, Related {
 	
 	Logical logical;
 	Point center;
 	int width;
 	int height;
-	private ArrayList<Shape> shapeList;
+	ShapeList shapeList;
 	SingleContainer<Box, Connective> leftBox;
 	SingleContainer<Box, Connective> rightBox;
 	SingleContainer<Box, Connective> outerBox;
@@ -33,13 +32,13 @@ public class Connective implements Drawable, Movable, Deletable {
 		setHeightAndWidth();
 	}
 	
-	private void createContainers() {
+	void createContainers() {
 		leftBox = new SingleContainer<Box, Connective>(this);
 		rightBox = new SingleContainer<Box, Connective>(this);
 		outerBox = new SingleContainer<Box, Connective>(this);
 	}
 	
-	public static Connective create(Logical logical, Point center, ArrayList<Shape> shapeList) {
+	public static Connective create(Logical logical, Point center, ShapeList shapeList) {
 		Connective connective = new Connective(logical, center);
 		connective.createContainers();
 		connective.shapeList = shapeList;
@@ -47,7 +46,7 @@ public class Connective implements Drawable, Movable, Deletable {
 		return connective;
 	}
 	
-	public static Connective create(Logical logical, int x, int y, ArrayList<Shape> shapeList) {
+	public static Connective create(Logical logical, int x, int y, ShapeList shapeList) {
 		return create(logical, new Point(x, y), shapeList);
 	}
 	
@@ -96,6 +95,18 @@ public class Connective implements Drawable, Movable, Deletable {
 		return rightBox.get();
 	}
 	
+	@Override
+	public void relationsChanging() {
+		if (shapeList != null)
+			shapeList.relationsChanging(this);
+	}
+	
+	@Override
+	public void relationsChanged() {
+		if (shapeList != null)
+			shapeList.relationsChanged(this);
+	}
+	
 	@Override
 	public boolean isValid() {
 		return isFullyConnected();
@@ -125,6 +136,8 @@ public class Connective implements Drawable, Movable, Deletable {
 	public void move(Point from, Point to, boolean external) {
 		if (external) {
 			center.move(from, to);
+			if (shapeList != null)
+				shapeList.update(this);
 			if (leftBox.get() != null)
 				leftBox.get().move(from, to, true);
 			rightBox.get().move(from, to, true);
@@ -136,6 +149,8 @@ public class Connective implements Drawable, Movable, Deletable {
 	@Override
 	public void move(Point from, Point to) {
 		center.move(from, to);
+		if (shapeList != null)
+			shapeList.update(this);
 		if (leftBox.get() != null && this.leftDistance(leftBox.get()) > CONNECTIVE_BOX_DIST) {
 			leftBox.set(null, null);
 		}
@@ -199,13 +214,12 @@ public class Connective implements Drawable, Movable, Deletable {
 	public void recompute(boolean moving) {
 		if (shapeList == null)
 			return;
-		computeBoxes(Arrays.boxArray(shapeList));
-		computeOuterBoxes(Arrays.boxArray(shapeList));
+		computeBoxes(shapeList.boxesNear(this, CONNECTIVE_BOX_DIST));
+		computeOuterBoxes(shapeList.boxesNear(this, 0));
 	}
 	
 	public double boundaryDistance(Point p) {
-		Box box = new Box(center.x - width/2, center.y - height/2, width, height);
-		return box.distance(p);
+		return Geometry.rectDistance(center.x - width/2, center.y - height/2, width, height, p.x, p.y);
 	}
 	
 	protected double distance(Box box) {
@@ -227,8 +241,7 @@ public class Connective implements Drawable, Movable, Deletable {
 
 	@Override
 	public boolean intersects(Line line) {
-		Box box = new Box(center.x - width/2, center.y - height/2, width, height);
-		return box.intersects(line);
+		return Geometry.rectIntersectsSegment(center.x - width/2, center.y - height/2, width, height, line.start.x, line.start.y, line.end.x, line.end.y);
 	}
 
 	@Override
@@ -2,62 +2,117 @@ package spiderdrawer.shape;
 
 import java.awt.Graphics2D;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 
 import spiderdrawer.shape.interfaces.Deletable;
 import spiderdrawer.shape.interfaces.Drawable;
-import static spiderdrawer.Parameters.FREEFORM_OVERLAP_DIST;
 import static spiderdrawer.Parameters.MAX_DOT_HEIGHT;
 import static spiderdrawer.Parameters.MAX_DOT_WIDTH;
 
 public class Freeform implements Drawable, Deletable {
 
-	ArrayList<Point> points;
+	/*
+	 * The points are kept as parallel primitive arrays, grown by doubling, with the bounding box updated as they are added.
+	 * Samples are read through size(), getX(i), getY(i) and getTime(i) rather than as Points.
+	 */
+	int[] xs;
+	int[] ys;
+	long[] times;
+	int size;
+	private int minX = Integer.MAX_VALUE;
+	private int maxX = Integer.MIN_VALUE;
+	private int minY = Integer.MAX_VALUE;
+	private int maxY = Integer.MIN_VALUE;
 	boolean removed;
 	
 	public Freeform() {
-		this.points = new ArrayList<Point>();
+		this(16);
+	}
+	
+	Freeform(int capacity) {
+		xs = new int[Math.max(capacity, 1)];
+		ys = new int[xs.length];
+		times = new long[xs.length];
 		removed = false;
 	}
 	
 	public Freeform(ArrayList<Point> points) {
-		this.points = points;
-		removed = false;
+		this(points.size());
+		for (int i = 0; i < points.size(); i++)
+			addPoint(points.get(i));
 	}
 	
 	public Freeform(Freeform[] freeforms) {
-		this.points = new ArrayList<Point>();
-		for (int i = 0; i < freeforms.length; i++)
-			this.points.addAll(freeforms[i].points);
+		this(totalSize(freeforms));
+		for (int i = 0; i < freeforms.length; i++) {
+			Freeform freeform = freeforms[i];
+			for (int j = 0; j < freeform.size; j++)
+				addPoint(freeform.xs[j], freeform.ys[j], freeform.times[j]);
+		}
 	}
 	
 	public Freeform(Point point) {
-		this(new ArrayList<Point>());
-		points.add(point);
+		this();
+		addPoint(point);
 	}
 	
 	public Freeform(int pointX, int pointY) {
-		this(new Point(pointX, pointY));
+		this();
+		addPoint(pointX, pointY);
+	}
+	
+	private static int totalSize(Freeform[] freeforms) {
+		int total = 0;
+		for (int i = 0; i < freeforms.length; i++)
+			total += freeforms[i].size;
+		return total;
 	}
 	
 	public void addPoint(Point point) {
-		points.add(point);
+		addPoint(point.x, point.y);
 	}
 	
 	public void addPoint(int pointX, int pointY) {
-		points.add(new Point(pointX, pointY));
+		addPoint(pointX, pointY, System.currentTimeMillis());
+	}
+	
+	void addPoint(int pointX, int pointY, long time) {
+		if (size == xs.length) {
+			xs = Arrays.copyOf(xs, size*2);
+			ys = Arrays.copyOf(ys, size*2);
+			times = Arrays.copyOf(times, size*2);
+		}
+		xs[size] = pointX;
+		ys[size] = pointY;
+		times[size] = time;
+		size++;
+		minX = Math.min(minX, pointX);
+		maxX = Math.max(maxX, pointX);
+		minY = Math.min(minY, pointY);
+		maxY = Math.max(maxY, pointY);
+	}
+	
+	public int size() {
+		return size;
 	}
 	
-	public ArrayList<Point> getPoints() {
-		return points;
+	public int getX(int i) {
+		return xs[i];
+	}
+	
+	public int getY(int i) {
+		return ys[i];
+	}
+	
+	public long getTime(int i) {
+		return times[i];
 	}
 	
 	public String pointsAsString() {
 		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < points.size(); i++) {
-			sb.append(points.get(i).x + "," + points.get(i).y);
-			if (i != points.size() - 1) {
+		for (int i = 0; i < size; i++) {
+			sb.append(xs[i] + "," + ys[i]);
+			if (i != size - 1) {
 				sb.append(',');
 			}
 		}
@@ -69,11 +124,9 @@ public class Freeform implements Drawable, Deletable {
 	 * @Returns boolean.
 	 */
 	public boolean overlaps(Freeform freeform, int distance) {
-		ArrayList<Point> comparedPoints = freeform.getPoints();
-		for (int i = 0; i < points.size() - 1; i++) {
-			Line pLine = new Line(points.get(i), points.get(i+1));
-			for (int j = 0; j < comparedPoints.size() - 1; j++) {
-				if (pLine.distance(new Line(comparedPoints.get(j), comparedPoints.get(j+1))) <= distance) {
+		for (int i = 0; i < size - 1; i++) {
+			for (int j = 0; j < freeform.size - 1; j++) {
+				if (Geometry.segmentDistance(xs[i], ys[i], xs[i+1], ys[i+1], freeform.xs[j], freeform.ys[j], freeform.xs[j+1], freeform.ys[j+1]) <= distance) {
 					return true;
 				}
 			}
@@ -81,59 +134,20 @@ public class Freeform implements Drawable, Deletable {
 		return false;
 	}
 	
-    public ArrayList<Freeform> getOverlappingFreeforms(ArrayList<Freeform> freeforms) {
-    	ArrayList<Freeform> overlappingFreeforms = new ArrayList<Freeform>();
-    	for (int i = 0; i < freeforms.size(); i++) {
-			Freeform currentFF = (Freeform) freeforms.get(i);
-			if (!this.equals(currentFF) && this.overlaps(currentFF, FREEFORM_OVERLAP_DIST)) {
-				overlappingFreeforms.add(currentFF);
-			}
-    	}
-    	return overlappingFreeforms;
-    }
-	
 	public int minX() {
-		int result = Integer.MAX_VALUE;
-		for(int i = 0; i < points.size(); i++) {
-			int value = points.get(i).getX();
-			if (value < result) {
-				result = value;
-			}
-		}
-		return result;
+		return minX;
 	}
 	
 	public int maxX() {
-		int result = Integer.MIN_VALUE;
-		for(int i = 0; i < points.size(); i++) {
-			int value = points.get(i).getX();
-			if (value > result) {
-				result = value;
-			}
-		}
-		return result;
+		return maxX;
 	}
 	
 	public int minY() {
-		int result = Integer.MAX_VALUE;
-		for(int i = 0; i < points.size(); i++) {
-			int value = points.get(i).getY();
-			if (value < result) {
-				result = value;
-			}
-		}
-		return result;
+		return minY;
 	}
 	
 	public int maxY() {
-		int result = Integer.MIN_VALUE;
-		for(int i = 0; i < points.size(); i++) {
-			int value = points.get(i).getY();
-			if (value > result) {
-				result = value;
-			}
-		}
-		return result;
+		return maxY;
 	}
 	
 	@Override
@@ -142,22 +156,16 @@ public class Freeform implements Drawable, Deletable {
 	}
 	
 	public void draw(Graphics2D g2) {
-		for (int i = 0; i < points.size() - 1; i++) {
-            Point p1 = points.get(i);
-            Point p2 = points.get(i+1);
-
-            g2.drawLine(p1.x, p1.y, p2.x, p2.y);
+		for (int i = 0; i < size - 1; i++) {
+            g2.drawLine(xs[i], ys[i], xs[i+1], ys[i+1]);
         }
 	}
 
 	@Override
 	public boolean intersects(Line line) {
 		boolean overlaps = false;
-		for (int i = 0; i < points.size() - 1; i++) {
-            Point p1 = points.get(i);
-            Point p2 = points.get(i+1);
-            Line currentLine = new Line(p1, p2);
-            if (currentLine.intersects(line)) {
+		for (int i = 0; i < size - 1; i++) {
+            if (Geometry.segmentsIntersect(xs[i], ys[i], xs[i+1], ys[i+1], line.start.x, line.start.y, line.end.x, line.end.y)) {
             	overlaps = true;
             	break;
             }
@@ -166,27 +174,13 @@ public class Freeform implements Drawable, Deletable {
 	}
 	
 	public boolean intersects(Circle circle) {
-		for (int i = 0; i < points.size()-1; i++) {
-			Line line = new Line(points.get(i), points.get(i+1));
-			if (circle.intersects(line))
+		for (int i = 0; i < size-1; i++) {
+			if (Geometry.segmentIntersectsCircle(xs[i], ys[i], xs[i+1], ys[i+1], circle.center.x, circle.center.y, circle.radius))
 				return true;
 		}
 		return false;
 	}
 	
-    public Set<Freeform> overlappingFreeforms(ArrayList<Freeform> freeformList, Set<Freeform> currentFreeforms) {
-    	Set<Freeform> intersectingFreeforms = new HashSet<Freeform>();
-    	intersectingFreeforms.add(this);
-    	currentFreeforms.add(this);
-    	ArrayList<Freeform> currentOverlappingFreeforms = this.getOverlappingFreeforms(freeformList);
-    	for (int i = 0; i < currentOverlappingFreeforms.size(); i++) {
-    		if (!intersectingFreeforms.contains(currentOverlappingFreeforms.get(i)) && !currentFreeforms.contains(currentOverlappingFreeforms.get(i))) {
-    			intersectingFreeforms.addAll(currentOverlappingFreeforms.get(i).overlappingFreeforms(freeformList, currentFreeforms));
-    		}
-    	}
-    	return intersectingFreeforms;
-    }
-    
     public double leftDistance(Box box) { //Swap left and right because change of perspective.
 		return box.rightDistance(this);
 	}
@@ -212,7 +206,7 @@ public class Freeform implements Drawable, Deletable {
 	
 	public boolean isLast(Freeform[] freeforms) {
 		for (int i = 0; i < freeforms.length; i++) {
-			if (freeforms[i].points.get(0).time > points.get(0).time)
+			if (freeforms[i].times[0] > times[0])
 				return false;
 		}
 		return true;
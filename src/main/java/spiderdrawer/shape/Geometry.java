@@ -0,0 +1,167 @@
+package spiderdrawer.shape;
+
+/*
+ * Distance and intersection tests on plain coordinates, so that hit testing and recompute don't build Points
+ * and Lines for box edges and freeform segments. Segments are (x1, y1)-(x2, y2), rectangles are top left
+ * corner, width and height. Each test does the same integer and double arithmetic as the Line, Circle and Box
+ * methods it was taken from, so results are unchanged.
+ */
+final class Geometry {
+
+	private Geometry() {
+	}
+
+	static double distance(int x1, int y1, int x2, int y2) {
+		return Math.sqrt((x1 - x2)*(x1 - x2) + (y1 - y2)*(y1 - y2));
+	}
+
+	/* Algorithm:
+	 *  P1 = a1 + t(a2-a1)
+	 *  P2 = b1 + s(b2 - b1)
+	 *  P1 = P2
+	 * 	Check if t and s in [0, 1]
+	 */
+	static boolean segmentsIntersect(int ax1, int ay1, int ax2, int ay2, int bx1, int by1, int bx2, int by2) {
+		int adx = ax2 - ax1;
+		int ady = ay2 - ay1;
+		int bdx = bx2 - bx1;
+		int bdy = by2 - by1;
+
+		if (adx == 0 && ady == 0 && bdx == 0 && bdy == 0)					//Two Points
+			return ax1 == bx1 && ay1 == by1;
+
+		int denom = bdx*ady - bdy*adx;
+		if (denom == 0) {													//Parallel Lines
+			if (bdx != 0) {													//Not vertical lines
+				double aYintercept = ay1 - (double)ady*ax1/adx;
+				double bYintercept = by1 - (double)bdy*bx1/bdx;
+				if (Math.abs(aYintercept - bYintercept) <= 1e-6) {
+					if (Math.min(ax1, ax2) >= Math.min(bx1, bx2) && Math.min(ax1, ax2) <= Math.max(bx1, bx2)
+							 || Math.max(ax1, ax2) <= Math.max(bx1, bx2) && Math.max(ax1, ax2) >= Math.min(bx1, bx2))
+						return true;
+				}
+			} else if (bdy != 0) {											//Not Horizontal Lines
+				double aXintercept = ax1 - (double)adx*ay1/ady;
+				double bXintercept = bx1 - (double)bdx*by1/bdy;
+				if (Math.abs(aXintercept - bXintercept) <= 1e-6) {
+					if (Math.min(ay1, ay2) >= Math.min(by1, by2) && Math.min(ay1, ay2) <= Math.max(by1, by2)
+							 || Math.max(ay1, ay2) <= Math.max(by1, by2) && Math.max(ay1, ay2) >= Math.min(by1, by2))
+						return true;
+				}
+			}
+			return false;
+		}
+
+		int startDy = by1 - ay1;
+		int startDx = bx1 - ax1;
+		double t = (double)(startDy*adx - startDx*ady)/denom;
+		double s = (double)(startDy*bdx - startDx*bdy)/denom;
+		return (t >= 0 && t <= 1) && (s >= 0 && s <= 1);						//Intersect is in both segments
+	}
+
+	/*
+	 * Zero if the segments cross, otherwise the distance between their closest end points.
+	 */
+	static double segmentDistance(int ax1, int ay1, int ax2, int ay2, int bx1, int by1, int bx2, int by2) {
+		if (segmentsIntersect(ax1, ay1, ax2, ay2, bx1, by1, bx2, by2))
+			return 0;
+		return Math.min(Math.min(distance(ax1, ay1, bx1, by1), distance(ax1, ay1, bx2, by2)), Math.min(distance(ax2, ay2, bx1, by1), distance(ax2, ay2, bx2, by2)));
+	}
+
+	/*
+	 * How far along the segment the point projects, 0 at the start and 1 at the end.
+	 */
+	static double distanceAlongSegment(int x1, int y1, int x2, int y2, int px, int py) {
+		int dx = x2 - x1;
+		int dy = y2 - y1;
+		int pdx = px - x1;
+		int pdy = py - y1;
+
+		int denom = dx*dx + dy*dy;
+		if (denom == 0)														//Segment is a single point
+			return Math.sqrt(pdx*pdx + pdy*pdy);
+
+		return (double)(pdx*dx + pdy*dy)/denom;
+	}
+
+	static double segmentPointDistance(int x1, int y1, int x2, int y2, int px, int py) {
+		double t = distanceAlongSegment(x1, y1, x2, y2, px, py);
+		if (t <= 0)															//Closer to start
+			return distance(x1, y1, px, py);
+		else if (t >= 1)													//Closer to end
+			return distance(x2, y2, px, py);
+		int ix = (int)Math.round(x1 + t*(x2 - x1));
+		int iy = (int)Math.round(y1 + t*(y2 - y1));
+		return distance(ix, iy, px, py);
+	}
+
+	/*
+	 * Whether the segment crosses the circle's outline.
+	 * Method: solve t^2(d.d)+2t(d.(s-c)) + (s-c).(s-c) - r^2 = 0
+	 *	check t1 or t2 between 0 and 1.
+	 */
+	static boolean segmentIntersectsCircle(int x1, int y1, int x2, int y2, int cx, int cy, int radius) {
+		int dx = x2 - x1;
+		int dy = y2 - y1;
+		if (dx == 0 && dy == 0)
+			return distance(x1, y1, cx, cy) == radius;
+		int sx = x1 - cx;
+		int sy = y1 - cy;
+		double a = dx*dx + dy*dy;
+		double b = 2*(double)(dx*sx + dy*sy);
+		double c = (double)(sx*sx + sy*sy) - radius*radius;
+
+		double disc = b*b-4*a*c;
+		if (disc < 0)	//Imaginary solutions
+			return false;
+
+		double sqrtDisc = Math.sqrt(disc);
+
+		double t1 = (-b + sqrtDisc)/(2*a);
+		if (t1 >= 0 && t1 <= 1)
+			return true;
+
+		double t2 = (-b - sqrtDisc)/(2*a);
+		return t2 >= 0 && t2 <= 1;
+	}
+
+	/*
+	 * Whether the segment crosses one of the rectangle's edges, each edge tested as the first segment.
+	 */
+	static boolean rectIntersectsSegment(int x, int y, int width, int height, int x1, int y1, int x2, int y2) {
+		int right = x + width;
+		int bottom = y + height;
+		return segmentsIntersect(x, y, right, y, x1, y1, x2, y2) || segmentsIntersect(x, bottom, right, bottom, x1, y1, x2, y2)
+				|| segmentsIntersect(x, y, x, bottom, x1, y1, x2, y2) || segmentsIntersect(right, y, right, bottom, x1, y1, x2, y2);
+	}
+
+	static boolean rectIntersectsCircle(int x, int y, int width, int height, int cx, int cy, int radius) {
+		int right = x + width;
+		int bottom = y + height;
+		return segmentIntersectsCircle(x, y, right, y, cx, cy, radius) || segmentIntersectsCircle(x, bottom, right, bottom, cx, cy, radius)
+				|| segmentIntersectsCircle(x, y, x, bottom, cx, cy, radius) || segmentIntersectsCircle(right, y, right, bottom, cx, cy, radius);
+	}
+
+	static boolean rectContains(int x, int y, int width, int height, int px, int py) {
+		return (x <= px && px <= x + width) && (y <= py && py <= y + height);
+	}
+
+	/*
+	 * Distance from the point to the nearest edge of the rectangle, whether the point is inside or not.
+	 */
+	static double rectBoundaryDistance(int x, int y, int width, int height, int px, int py) {
+		int right = x + width;
+		int bottom = y + height;
+		return Math.min(Math.min(segmentPointDistance(x, y, right, y, px, py), segmentPointDistance(x, bottom, right, bottom, px, py)),
+				Math.min(segmentPointDistance(x, y, x, bottom, px, py), segmentPointDistance(right, y, right, bottom, px, py)));
+	}
+
+	/*
+	 * Zero inside the rectangle, the distance to its nearest edge outside.
+	 */
+	static double rectDistance(int x, int y, int width, int height, int px, int py) {
+		if (rectContains(x, y, width, height, px, py))
+			return 0;
+		return rectBoundaryDistance(x, y, width, height, px, py);
+	}
+}
@@ -12,17 +12,17 @@ import spiderdrawer.shape.containers.SingleContainer;
 import spiderdrawer.shape.interfaces.Deletable;
 import spiderdrawer.shape.interfaces.Drawable;
 import spiderdrawer.shape.interfaces.Movable;
-import spiderdrawer.shape.interfaces.Shape;
+import spiderdrawer.shape.interfaces.Related;
 import static spiderdrawer.Parameters.*;
 
-public class Label implements Drawable, Movable, Deletable {
+public class Label implements Drawable, Movable, Deletable, Related {
 
 	char letter;
 	int number;
 	Point center;
 	int width;
 	int height;
-	private ArrayList<Shape> shapeList;
+	ShapeList shapeList;
 	SingleContainer<Circle, Label> circle;
 	SingleContainer<Box, Label> box;
 	ArrayList<Label> sameLabels;
@@ -52,7 +52,7 @@ public class Label implements Drawable, Movable, Deletable {
 		box = new SingleContainer<Box, Label>(this);
 	}
 	
-	public static Label create(char letter, Point position, ArrayList<Shape> shapeList) {
+	public static Label create(char letter, Point position, ShapeList shapeList) {
 		Label label = new Label(letter, position);
 		label.createContainers();
 		label.shapeList = shapeList;
@@ -70,6 +70,8 @@ public class Label implements Drawable, Movable, Deletable {
 	@Override
 	public void move(Point from, Point to) {
 		center.move(from, to);
+		if (shapeList != null)
+			shapeList.update(this);
 		if (circle.get() != null && this.distance(circle.get()) > LABEL_CIRCLE_DIST) {
 			circle.set(null, null);
 		}
@@ -88,8 +90,7 @@ public class Label implements Drawable, Movable, Deletable {
 	}
 	
 	public double boundaryDistance(Point p) {
-		Box box = new Box(center.x - width/2, center.y - height/2, width, height);
-		return box.distance(p);
+		return Geometry.rectDistance(center.x - width/2, center.y - height/2, width, height, p.x, p.y);
 	}
 	
 	protected double distance(Circle c) {
@@ -129,9 +130,9 @@ public class Label implements Drawable, Movable, Deletable {
 	public void recompute(boolean moving) {
 		if (shapeList == null)
 			return;
-		computeCircles(Arrays.circleArray(shapeList));
-		computeBoxes(Arrays.boxArray(shapeList));
-		computeLabels(Arrays.labelArray(shapeList));
+		computeCircles(shapeList.circlesNear(this, LABEL_CIRCLE_DIST));
+		computeBoxes(shapeList.boxesNear(this, 0));
+		computeLabels(shapeList.labelArray());
 		if (circle.get() != null && !moving)
 			snapToCircle(circle.get());
 	}
@@ -151,16 +152,20 @@ public class Label implements Drawable, Movable, Deletable {
 	}
 	
 	protected void addSameLabel(Label label) {
+		relationsChanging();
 		if (this.sameLabels == null)
 			this.sameLabels = new ArrayList<Label>();
 		sameLabels.add(label);
+		relationsChanged();
 		if (label != null && !label.containsSameLabel(this)) {
 			label.addSameLabel(this);
 		}
 	}
 	
 	protected void removeSameLabel(Label label) {
+		relationsChanging();
 		sameLabels.remove(label);
+		relationsChanged();
 		if (label != null && label.containsSameLabel(this)) {
 			label.removeSameLabel(this);
 		}
@@ -220,12 +225,26 @@ public class Label implements Drawable, Movable, Deletable {
 		
 		this.center.x = (int) (t*(center.x-circle.center.x) + circle.center.x + 0.5); //0.5 for rounding.
 		this.center.y = (int) (t*(center.y-circle.center.y) + circle.center.y + 0.5);
+		if (shapeList != null)
+			shapeList.update(this);
 	}
 	
 	protected boolean hasCircle() {
 		return circle.get() != null;
 	}
 	
+	@Override
+	public void relationsChanging() {
+		if (shapeList != null)
+			shapeList.relationsChanging(this);
+	}
+	
+	@Override
+	public void relationsChanged() {
+		if (shapeList != null)
+			shapeList.relationsChanged(this);
+	}
+	
 	@Override
 	public boolean isValid() {
 		return (hasCircle() && !hasSameLabel()) || number != 0;
@@ -252,8 +271,7 @@ public class Label implements Drawable, Movable, Deletable {
 	@Override
 	public boolean intersects(Line line) {
 		int width = Math.max(this.width, LABEL_MIN_WIDTH);
-		Box box = new Box(center.x - width/2, center.y - height/2, width, height);
-		return box.intersects(line);
+		return Geometry.rectIntersectsSegment(center.x - width/2, center.y - height/2, width, height, line.start.x, line.start.y, line.end.x, line.end.y);
 	}
 
 	@Override
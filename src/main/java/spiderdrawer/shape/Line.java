@@ -2,7 +2,6 @@ package spiderdrawer.shape;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.util.ArrayList;
 
 import spiderdrawer.exception.EmptyContainerException;
 import spiderdrawer.shape.containers.MultiContainer;
@@ -10,17 +9,17 @@ import spiderdrawer.shape.containers.SingleContainer;
 import spiderdrawer.shape.interfaces.Deletable;
 import spiderdrawer.shape.interfaces.Drawable;
 import spiderdrawer.shape.interfaces.Movable;
-import spiderdrawer.shape.interfaces.Shape;
+import spiderdrawer.shape.interfaces.Related;
 import static spiderdrawer.Parameters.POINT_LINE_DIST;
 import static spiderdrawer.Parameters.DIST_LINE_MOVE_END;
 
-public class Line implements Drawable, Movable, Deletable {
+public class Line implements Drawable, Movable, Deletable, Related {
 
 	Point start;
 	Point end;
 	boolean startSet;
 	boolean endSet;
-	private ArrayList<Shape> shapeList;
+	ShapeList shapeList;
 	Point lastMovedTo;
 	double lastDistAlong;
 	MultiContainer<Box, Line> boxes;
@@ -36,13 +35,13 @@ public class Line implements Drawable, Movable, Deletable {
 		this(new Point(startX, startY), new Point(endX, endY));
 	}
 	
-	private void createContainers() {
+	void createContainers() {
 		boxes = new MultiContainer<Box, Line>(this);
 		overlapBoxes = new MultiContainer<Box, Line>(this);
 		spider = new SingleContainer<Spider, Line>(this);
 	}
 	
-	public static Line create(int startX, int startY, int endX, int endY, ArrayList<Shape> shapeList) {
+	public static Line create(int startX, int startY, int endX, int endY, ShapeList shapeList) {
 		Line line = new Line(startX, startY, endX, endY);
 		line.createContainers();
 		line.shapeList = shapeList;
@@ -50,13 +49,14 @@ public class Line implements Drawable, Movable, Deletable {
 		return line;
 	}
 	
-	public static Line create(Point start, Point end, ArrayList<Shape> shapeList) {
+	public static Line create(Point start, Point end, ShapeList shapeList) {
 		return create(start.x, start.y, end.x, end.y, shapeList);
 	}
 	
 	
-	public static Line create(Freeform freeform, ArrayList<Shape> shapeList) {
-		return create(freeform.points.get(0), freeform.points.get(freeform.points.size() - 1), shapeList);
+	public static Line create(Freeform freeform, ShapeList shapeList) {
+		int last = freeform.size - 1;
+		return create(freeform.xs[0], freeform.ys[0], freeform.xs[last], freeform.ys[last], shapeList);
 	}
 	
 	protected boolean hasBothEnds() {
@@ -148,17 +148,17 @@ public class Line implements Drawable, Movable, Deletable {
 	@Override
 	public void recompute(boolean moving) {
 		if (shapeList == null)
-			return;		
+			return;
 		if (startSet) {
-			start.recompute(moving);
+			shapeList.schedule(start, moving);
 		}
 		
 		if (endSet) {
-			end.recompute(moving);
+			shapeList.schedule(end, moving);
 		}
-		computePoints(Arrays.pointArray(shapeList));
-		computeBoxes(Arrays.boxArray(shapeList));
-		computeOverlapBoxes(Arrays.boxArray(shapeList));
+		computePoints(shapeList.pointsNear(this, POINT_LINE_DIST));
+		computeBoxes(shapeList.boxesNear(this, 0));
+		computeOverlapBoxes(shapeList.boxesNear(this, 0));
 		computeSpider();
 	}
 	
@@ -205,6 +205,8 @@ public class Line implements Drawable, Movable, Deletable {
 	}
 	
 	protected void setPoint(Point point, boolean start) {
+		relationsChanging();
+		relationsChanged();
 		if (start) {
 			if (point != null) {
 				Point oldStart = this.start;
@@ -294,8 +296,8 @@ public class Line implements Drawable, Movable, Deletable {
 				}
 			}
 		}
-		
-		
+		if (shapeList != null)
+			shapeList.update(this);
 	}
 	
 	protected Point getPoint(boolean start) {
@@ -321,6 +323,18 @@ public class Line implements Drawable, Movable, Deletable {
 		}
 	}
 	
+	@Override
+	public void relationsChanging() {
+		if (shapeList != null)
+			shapeList.relationsChanging(this);
+	}
+	
+	@Override
+	public void relationsChanged() {
+		if (shapeList != null)
+			shapeList.relationsChanged(this);
+	}
+	
 	@Override
 	public boolean isValid() {
 		return hasBothEnds() && !equalPointCircles() && overlapBoxes.isEmpty();
@@ -337,60 +351,8 @@ public class Line implements Drawable, Movable, Deletable {
 		g2.setColor(Color.BLACK);
 	}
 	
-	/* Algorithm:
-	 *  P1 = this.start + t(this.end-this.start)
-	 *  P2 = l.start + s(l.end - l.start)
-	 *  P1 = P2
-	 * 	Check if t and s in [0, 1]
-	 */
 	public boolean intersects(Line l) {
-		int thisdx = this.end.x - this.start.x;
-		int thisdy = this.end.y - this.start.y;
-		int ldx = l.end.x - l.start.x;
-		int ldy = l.end.y - l.start.y;
-		
-		if (thisdx == 0 && thisdy == 0 && ldx == 0 && ldy == 0) {			//Two Points
-			if (this.start.x == l.start.x && this.start.y == l.start.y) { 	//Identical Points
-				return true;
-			} else {
-				return false;
-			}
-		}
-		
-		int denom = ldx*thisdy - ldy*thisdx;
-		if (denom == 0) {													//Parallel Lines	
-			if (ldx != 0) {													//Not vertical lines
-				double thisYintercept = this.start.y - (double)thisdy*this.start.x/thisdx;
-				double lYintercept = l.start.y - (double)ldy*l.start.x/ldx;
-				if (Math.abs(thisYintercept - lYintercept) <= 1e-6) {
-					if (Math.min(this.start.x,this.end.x) >= Math.min(l.start.x, l.end.x) && Math.min(this.start.x,this.end.x) <= Math.max(l.start.x, l.end.x)
-							 || Math.max(this.start.x,this.end.x) <= Math.max(l.start.x, l.end.x) && Math.max(this.start.x,this.end.x) >= Math.min(l.start.x, l.end.x)) {
-								return true;
-					}
-				}
-			}  else if (ldy != 0) {											//Not Horizontal Lines
-				double thisXintercept = this.start.x - (double)thisdx*this.start.y/thisdy;
-				double lXintercept = l.start.x - (double)ldx*l.start.y/ldy;
-				if (Math.abs(thisXintercept - lXintercept) <= 1e-6) {
-					if (Math.min(this.start.y,this.end.y) >= Math.min(l.start.y, l.end.y) && Math.min(this.start.y,this.end.y) <= Math.max(l.start.y, l.end.y)
-							 || Math.max(this.start.y,this.end.y) <= Math.max(l.start.y, l.end.y) && Math.max(this.start.y,this.end.y) >= Math.min(l.start.y, l.end.y)) {
-								return true;
-					}
-				}
-			}
-			return false;
-		}
-		
-		int ltothis_start_dy = l.start.y - this.start.y;
-		int ltothis_start_dx = l.start.x - this.start.x;
-		double t = (double)(ltothis_start_dy*thisdx - ltothis_start_dx*thisdy)/denom;
-		double s = (double)(ltothis_start_dy*ldx - ltothis_start_dx*ldy)/denom;
-		
-		if ((t >= 0 && t <= 1) && (s >= 0 && s <= 1)) {						//Intersect is in both segments
-			return true;
-		} else {
-			return false;
-		}
+		return Geometry.segmentsIntersect(start.x, start.y, end.x, end.y, l.start.x, l.start.y, l.end.x, l.end.y);
 	}
 	
 	protected double distance(Circle c) {
@@ -403,25 +365,11 @@ public class Line implements Drawable, Movable, Deletable {
 	
 	
 	protected double distance(Line l) {
-		if (intersects(l)) {
-			return 0;
-		}
-		return Math.min(Math.min(this.start.distance(l.start), this.start.distance(l.end)), Math.min(this.end.distance(l.start), this.end.distance(l.end)));
+		return Geometry.segmentDistance(start.x, start.y, end.x, end.y, l.start.x, l.start.y, l.end.x, l.end.y);
 	}
 	
 	protected double distance(Point p) {
-		int thisdx = this.end.x - this.start.x;
-		int thisdy = this.end.y - this.start.y;
-		
-		double t = distanceAlongLine(p);
-		
-		if (t <= 0) {										//Closer to start
-			return this.start.distance(p);
-		} else if (t >= 1) {								//Closer to end
-			return this.end.distance(p);
-		}
-		Point intersect = new Point((int)Math.round(this.start.x + t*thisdx), (int)Math.round(this.start.y + t*thisdy));
-		return intersect.distance(p);
+		return Geometry.segmentPointDistance(start.x, start.y, end.x, end.y, p.x, p.y);
 	}
 	
 	public double boundaryDistance(Point p) {
@@ -433,17 +381,7 @@ public class Line implements Drawable, Movable, Deletable {
 	}
 	
 	protected double distanceAlongLine(Point p) {
-		int thisdx = this.end.x - this.start.x;
-		int thisdy = this.end.y - this.start.y;
-		int ptothis_start_dx = p.x - this.start.x;
-		int ptothis_start_dy = p.y - this.start.y;
-		
-		int denom = thisdx*thisdx + thisdy*thisdy;
-		if (denom == 0) {									//Line is a single point
-			return Math.sqrt(ptothis_start_dx*ptothis_start_dx + ptothis_start_dy*ptothis_start_dy);
-		}
-		
-		return (double)(ptothis_start_dx*thisdx + ptothis_start_dy*thisdy)/denom;
+		return Geometry.distanceAlongSegment(start.x, start.y, end.x, end.y, p.x, p.y);
 	}
 
 
@@ -451,13 +389,15 @@ public class Line implements Drawable, Movable, Deletable {
 		if (external) {
 			start.move(from, to);
 			end.move(from, to);
+			if (shapeList != null)
+				shapeList.update(this);
 		} else {
 			move(from, to);
 		}
 	}
 	
 	public double length() {
-		return Math.sqrt((start.x - end.x)*(start.x - end.x) + (start.y - end.y)*(start.y - end.y));
+		return Geometry.distance(start.x, start.y, end.x, end.y);
 	}
 	
 	@Override
@@ -474,6 +414,8 @@ public class Line implements Drawable, Movable, Deletable {
 			start.move(from, to);
 		if (distAlong > DIST_LINE_MOVE_END)
 			end.move(from, to);
+		if (shapeList != null)
+			shapeList.update(this);
 	}
 
 	@Override
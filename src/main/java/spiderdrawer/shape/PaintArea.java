@@ -0,0 +1,88 @@
+package spiderdrawer.shape;
+
+import static spiderdrawer.Parameters.CONNECTIVE_FONT_SIZE;
+import static spiderdrawer.Parameters.FONT_SIZE;
+import static spiderdrawer.Parameters.LABEL_MIN_WIDTH;
+import static spiderdrawer.Parameters.PAINT_MARGIN;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+
+import spiderdrawer.shape.interfaces.Shape;
+
+/*
+ * Where drawing a shape paints, and which other shapes' drawing depends on it, for repainting only what changed.
+ */
+public class PaintArea {
+
+	/*
+	 * The area drawing the shape can touch, with room for the stroke and for the text of labels and connectives,
+	 * or null if it isn't known.
+	 */
+	public static Rectangle bounds(Shape shape) {
+		if (shape instanceof Shading) {
+			Shading shading = (Shading) shape;
+			Box box = shading.box.get();
+			if (box == null && shading.included.size() > 0 && shading.included.get(0).boxes.size() > 0)
+				box = shading.included.get(0).boxes.get(0);
+			return (box == null)? null : bounds(box);
+		}
+		int[] bounds = new int[4];
+		if (!SpatialIndex.bounds(shape, bounds))
+			return null;
+		Rectangle rect = new Rectangle(bounds[0], bounds[1], bounds[2] - bounds[0], bounds[3] - bounds[1]);
+		rect.grow(PAINT_MARGIN, PAINT_MARGIN);
+		if (shape instanceof Label)
+			return textBounds((Label) shape);
+		if (shape instanceof Connective)
+			rect.grow(CONNECTIVE_FONT_SIZE, CONNECTIVE_FONT_SIZE);
+		if (shape instanceof Point && ((Point) shape).label != null)
+			rect = rect.union(textBounds(((Point) shape).label));
+		return rect;
+	}
+
+	/*
+	 * The shadings whose fill is built from the box or circle: the box's own shading, and the shadings of the circles
+	 * in the box or in the circle's boxes.
+	 */
+	public static ArrayList<Shading> shadingsDrawnFrom(Shape shape) {
+		ArrayList<Shading> result = new ArrayList<Shading>();
+		if (shape instanceof Circle) {
+			Circle circle = (Circle) shape;
+			result.addAll(circle.shadings.list());
+			for (int i = 0; i < circle.boxes.size(); i++)
+				addShadings(circle.boxes.get(i), result);
+		} else if (shape instanceof Box) {
+			addShadings((Box) shape, result);
+		}
+		return result;
+	}
+
+	private static void addShadings(Box box, ArrayList<Shading> result) {
+		if (box.shading.get() != null && !result.contains(box.shading.get()))
+			result.add(box.shading.get());
+		for (int i = 0; i < box.circles.size(); i++) {
+			ArrayList<Shading> shadings = box.circles.get(i).shadings.list();
+			for (int j = 0; j < shadings.size(); j++) {
+				if (!result.contains(shadings.get(j)))
+					result.add(shadings.get(j));
+			}
+		}
+	}
+
+	/*
+	 * The letter is drawn up from the bottom of the label and the number to its right, a little lower.
+	 */
+	private static Rectangle textBounds(Label label) {
+		int width = Math.max(label.width, LABEL_MIN_WIDTH);
+		int left = label.center.x - width/2;
+		int right = label.center.x + width/2;
+		if (label.number != 0)
+			right = Math.max(right, label.center.x + label.width - 6 + String.valueOf(label.number).length()*FONT_SIZE);
+		int top = label.center.y - label.height/2;
+		int bottom = label.center.y + label.height/2 + 7;
+		Rectangle rect = new Rectangle(left, top, right - left, bottom - top);
+		rect.grow(FONT_SIZE/2, FONT_SIZE/2);
+		return rect;
+	}
+}
@@ -2,8 +2,6 @@ package spiderdrawer.shape;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 import spiderdrawer.exception.EmptyContainerException;
@@ -12,19 +10,18 @@ import spiderdrawer.shape.containers.SingleContainer;
 import spiderdrawer.shape.interfaces.Deletable;
 import spiderdrawer.shape.interfaces.Drawable;
 import spiderdrawer.shape.interfaces.Movable;
-import spiderdrawer.shape.interfaces.Shape;
+import spiderdrawer.shape.interfaces.Related;
 import static spiderdrawer.Parameters.*;
 
-public class Point implements Drawable, Movable, Deletable {
+public class Point implements Drawable, Movable, Deletable, Related {
 
 	int x;
 	int y;
-	long time;
 	Line line1;
 	boolean line1Start;
 	Line line2;
 	boolean line2Start;
-	private ArrayList<Shape> shapeList;
+	ShapeList shapeList;
 	MultiContainer<Circle, Point> circles;
 	MultiContainer<Box, Point> boxes;
 	Label label;
@@ -33,16 +30,15 @@ public class Point implements Drawable, Movable, Deletable {
 	public Point(int x, int y) {
 		this.x = x;
 		this.y = y;
-		time = (new Date()).getTime();
 	}
 	
-	private void createContainers() {
+	void createContainers() {
 		circles = new MultiContainer<Circle, Point>(this);
 		boxes = new MultiContainer<Box, Point>(this);
 		spider = new SingleContainer<Spider, Point>(this);
 	}
 	
-	public static Point create(int x, int y, ArrayList<Shape> shapeList) {
+	public static Point create(int x, int y, ShapeList shapeList) {
 		Point point = new Point(x, y);
 		point.createContainers();
 		point.shapeList = shapeList;
@@ -50,16 +46,22 @@ public class Point implements Drawable, Movable, Deletable {
 		return point;
 	}
 	
-	public static Point create(Freeform freeform, ArrayList<Shape> shapeList) {
+	/*
+	 * The spider's label is drawn with the point, so changing it counts as a change to the point.
+	 */
+	void setSpiderLabel(Label label) {
+		relationsChanging();
+		this.label = label;
+		if (shapeList != null)
+			shapeList.update(this);
+	}
+	
+	public static Point create(Freeform freeform, ShapeList shapeList) {
 		int x = (freeform.minX() + freeform.maxX())/2;
 		int y = (freeform.minY() + freeform.maxY())/2;
 		return create(x, y, shapeList);
 	}
 	
-	public float getTime() {
-		return time;
-	}
-	
 	public int getX() {
 		return x;
 	}
@@ -132,10 +134,12 @@ public class Point implements Drawable, Movable, Deletable {
 	}
 	
 	protected void setLine1(Line l, boolean start) {
+		relationsChanging();
 		Line oldLine = line1;
 		boolean oldLineStart = line1Start;
 		line1 = l;
 		line1Start = start;
+		relationsChanged();
 		if (oldLine != null) {
 			oldLine.setPoint(null, oldLineStart);
 		}
@@ -145,6 +149,7 @@ public class Point implements Drawable, Movable, Deletable {
 	}
 	
 	protected void setLine2(Line l, boolean start) {
+		relationsChanging();
 		Line oldLine = line2;
 		boolean oldLineStart = line2Start;
 		if (oldLine != null) {
@@ -153,11 +158,24 @@ public class Point implements Drawable, Movable, Deletable {
 		
 		line2 = l;
 		line2Start = start;
+		relationsChanged();
 		if (line2 != null && !this.equals(line2.getPoint(start))) {
 			line2.setPoint(this, start);
 		}
 	}
 	
+	@Override
+	public void relationsChanging() {
+		if (shapeList != null)
+			shapeList.relationsChanging(this);
+	}
+	
+	@Override
+	public void relationsChanged() {
+		if (shapeList != null)
+			shapeList.relationsChanged(this);
+	}
+	
 	@Override
 	public boolean isValid() {
 		return !isPointSameCircle();
@@ -181,6 +199,13 @@ public class Point implements Drawable, Movable, Deletable {
 		y += to.getY() - from.getY();
 		if (label != null)
 			label.move(from, to);
+		if (shapeList != null) {
+			shapeList.update(this);
+			if (line1 != null)
+				shapeList.update(line1);
+			if (line2 != null)
+				shapeList.update(line2);
+		}
 	}
 	
 	protected void moveTo(Point to) {
@@ -188,7 +213,7 @@ public class Point implements Drawable, Movable, Deletable {
 	}
 	
 	protected double distance(Point p) {
-		return Math.sqrt((this.x - p.x)*(this.x - p.x) + (this.y - p.y)*(this.y - p.y));
+		return Geometry.distance(x, y, p.x, p.y);
 	}
 	
 	public double boundaryDistance(Point p) {
@@ -280,9 +305,9 @@ public class Point implements Drawable, Movable, Deletable {
 	public void recompute(boolean moving) {
 		if (shapeList == null)
 			return;
-		computeLines(Arrays.lineArray(shapeList));
-		computeCircles(Arrays.circleArray(shapeList));
-		computeBoxes(Arrays.boxArray(shapeList));
+		computeLines(shapeList.linesNear(this, POINT_LINE_DIST));
+		computeCircles(shapeList.circlesNear(this, 0));
+		computeBoxes(shapeList.boxesNear(this, 0));
 		computeSpider();
 	}
 	
@@ -359,8 +384,7 @@ public class Point implements Drawable, Movable, Deletable {
 
 	@Override
 	public boolean intersects(Line line) {
-		Circle circle = new Circle(x, y , 4);
-		return circle.intersects(line);
+		return Geometry.segmentIntersectsCircle(line.start.x, line.start.y, line.end.x, line.end.y, x, y, 4);
 	}
 	
 	public Spider getSpider() {
@@ -0,0 +1,161 @@
+package spiderdrawer.shape;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import spiderdrawer.shape.interfaces.Movable;
+
+/*
+ * Collects the shapes that need recomputing while a batch (one user gesture) is open,
+ * and settles each once when the batch ends. A shape is settled after the shapes its relations
+ * are worked out from (a line after its endpoints, a spider after its points and lines);
+ * otherwise shapes settle in the order they were scheduled. A recompute scheduled while settling
+ * runs straight away, as it did inside the recompute that caused it.
+ * What a shape needs is kept as the relations to redo: its geometric ones, such as overlaps and containment,
+ * which follow it while it is dragged, and its attachments, such as labels and points, which are only redone
+ * once it is dropped. A shape already settled for those relations in this batch isn't recomputed again.
+ * Outside a batch, or on another thread than the one that opened it, recomputes run straight away.
+ */
+class RecomputeScheduler {
+
+	static final int GEOMETRY = 1;
+	static final int ATTACHMENTS = 2;
+
+	private final ShapeList shapeList;
+	private final IdentityHashMap<Movable, Integer> dirty = new IdentityHashMap<Movable, Integer>();
+	private final ArrayList<Movable> dirtyOrder = new ArrayList<Movable>();
+	private final IdentityHashMap<Movable, Integer> settled = new IdentityHashMap<Movable, Integer>();
+	private Thread batchThread;
+	private int depth = 0;
+	private boolean settling = false;
+
+	RecomputeScheduler(ShapeList shapeList) {
+		this.shapeList = shapeList;
+	}
+
+	private static int relations(boolean moving) {
+		return moving? GEOMETRY : GEOMETRY | ATTACHMENTS;
+	}
+
+	boolean inBatch() {
+		return depth > 0 && Thread.currentThread() == batchThread;
+	}
+
+	void begin() {
+		if (depth > 0 && Thread.currentThread() != batchThread)
+			throw new IllegalStateException("Recompute batch already open on " + batchThread.getName());
+		if (depth == 0)
+			batchThread = Thread.currentThread();
+		depth++;
+	}
+
+	void end() {
+		if (!inBatch())
+			throw new IllegalStateException("No recompute batch open.");
+		try {
+			if (depth == 1 && !settling)
+				settle();
+		} finally {
+			depth--;
+			if (depth == 0)
+				batchThread = null;
+		}
+	}
+
+	/*
+	 * A moving recompute redoes the geometric relations only, a non moving one all of them.
+	 */
+	void schedule(Movable movable, boolean moving) {
+		if (!inBatch()) {
+			movable.recompute(moving);
+			return;
+		}
+		if (settling) {
+			settle(movable, relations(moving));
+			return;
+		}
+		Integer current = dirty.get(movable);
+		if (current == null) {
+			dirty.put(movable, relations(moving));
+			dirtyOrder.add(movable);
+		} else {
+			dirty.put(movable, current | relations(moving));
+		}
+	}
+
+	private void settle() {
+		settling = true;
+		try {
+			ArrayList<Movable> order = new ArrayList<Movable>(dirtyOrder.size());
+			IdentityHashMap<Movable, Boolean> visited = new IdentityHashMap<Movable, Boolean>();
+			for (int i = 0; i < dirtyOrder.size(); i++)
+				visit(dirtyOrder.get(i), visited, order);
+			for (int i = 0; i < order.size(); i++) {
+				Movable movable = order.get(i);
+				settle(movable, dirty.get(movable));
+			}
+		} finally {
+			settled.clear();
+			dirty.clear();
+			dirtyOrder.clear();
+			settling = false;
+		}
+	}
+
+	private void visit(Movable movable, IdentityHashMap<Movable, Boolean> visited, ArrayList<Movable> order) {
+		if (visited.containsKey(movable))
+			return;
+		visited.put(movable, Boolean.TRUE);
+		List<? extends Movable> dependencies = dependencies(movable);
+		for (int i = 0; i < dependencies.size(); i++) {
+			if (dirty.containsKey(dependencies.get(i)))
+				visit(dependencies.get(i), visited, order);
+		}
+		order.add(movable);
+	}
+
+	private static List<? extends Movable> dependencies(Movable movable) {
+		if (movable instanceof Line) {
+			Line line = (Line) movable;
+			ArrayList<Point> points = new ArrayList<Point>(2);
+			if (line.startSet)
+				points.add(line.start);
+			if (line.endSet)
+				points.add(line.end);
+			return points;
+		}
+		if (movable instanceof Spider) {
+			Spider spider = (Spider) movable;
+			ArrayList<Movable> members = new ArrayList<Movable>(spider.points.size() + spider.lines.size());
+			for (int i = 0; i < spider.points.size(); i++)
+				members.add(spider.points.get(i));
+			for (int i = 0; i < spider.lines.size(); i++)
+				members.add(spider.lines.get(i));
+			return members;
+		}
+		return Collections.<Movable>emptyList();
+	}
+
+	private void settle(Movable movable, int relations) {
+		Integer done = settled.get(movable);
+		if (done != null && (relations & ~done) == 0)
+			return;
+		if (!isLive(movable))
+			return;
+		settled.put(movable, (done == null)? relations : done | relations);
+		movable.recompute(relations == GEOMETRY);
+	}
+
+	/*
+	 * Shapes deleted during the gesture are not recomputed, so they don't pick up new relations.
+	 */
+	private boolean isLive(Movable movable) {
+		if (movable instanceof Spider) {
+			Spider spider = (Spider) movable;
+			return !spider.lines.isEmpty() || !spider.points.isEmpty();
+		}
+		return shapeList.isIndexed(movable);
+	}
+}
@@ -0,0 +1,118 @@
+package spiderdrawer.shape;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import spiderdrawer.shape.interfaces.Shape;
+
+/*
+ * What changed in the scene since it was last asked. For cached drawing, the version changes whenever a shape is added
+ * or removed, and the shapes that moved are kept until takeMoved(); likewise the shapes whose relations changed are
+ * kept until takeRelationsChanged(). Once journaled, what changed is kept for the journal until takeJournaled().
+ */
+class SceneChanges {
+
+	private final IdentityHashMap<Shape, Boolean> moved = new IdentityHashMap<Shape, Boolean>();
+	private final IdentityHashMap<Shape, Boolean> relationsChanged = new IdentityHashMap<Shape, Boolean>();
+	private SceneJournal.Changes journaled;
+	private int version = 0;
+
+	int version() {
+		return version;
+	}
+
+	void added(Shape shape) {
+		version++;
+		if (journaled != null)
+			journaled.added(shape);
+	}
+
+	void removed(Shape shape) {
+		version++;
+		moved.remove(shape);
+		if (journaled != null)
+			journaled.removed(shape);
+	}
+
+	void moved(Shape shape) {
+		moved.put(shape, Boolean.TRUE);
+		if (journaled != null)
+			journaled.changed(shape);
+	}
+
+	void relationsChanged(Shape shape) {
+		relationsChanged.put(shape, Boolean.TRUE);
+		if (journaled != null)
+			journaled.changed(shape);
+	}
+
+	/*
+	 * The list was rebuilt, so nothing kept still holds.
+	 */
+	void reordered() {
+		version++;
+		moved.clear();
+		relationsChanged.clear();
+		if (journaled != null)
+			journaled.reordered = true;
+	}
+
+	Shape[] takeMoved() {
+		Shape[] result = moved.keySet().toArray(new Shape[moved.size()]);
+		moved.clear();
+		return result;
+	}
+
+	/*
+	 * The changes are only kept once this has been called.
+	 */
+	SceneJournal.Changes takeJournaled() {
+		SceneJournal.Changes taken = (journaled == null)? new SceneJournal.Changes() : journaled;
+		journaled = new SceneJournal.Changes();
+		return taken;
+	}
+
+	/*
+	 * The shapes whose relations changed since the last call, and the shapes whose validity reads them: the shadings
+	 * of a circle, the box a connective is in, and every point and line along the same spider, as a point's validity
+	 * depends on the points along it. Both sides of a relation are told when it changes, so nothing else can be affected.
+	 */
+	Shape[] takeRelationsChanged() {
+		IdentityHashMap<Object, Boolean> found = new IdentityHashMap<Object, Boolean>(relationsChanged);
+		ArrayList<Object> chain = new ArrayList<Object>();
+		for (Shape shape : relationsChanged.keySet()) {
+			if (shape instanceof Circle) {
+				ArrayList<Shading> shadings = ((Circle) shape).shadings.list();
+				for (int i = 0; i < shadings.size(); i++)
+					found.put(shadings.get(i), Boolean.TRUE);
+			} else if (shape instanceof Connective) {
+				if (((Connective) shape).outerBox.get() != null)
+					found.put(((Connective) shape).outerBox.get(), Boolean.TRUE);
+			} else if (shape instanceof Point || shape instanceof Line) {
+				chain.add(shape);
+			}
+		}
+		relationsChanged.clear();
+		while (!chain.isEmpty()) {
+			Object shape = chain.remove(chain.size() - 1);
+			if (shape instanceof Point) {
+				addChained(((Point) shape).line1, found, chain);
+				addChained(((Point) shape).line2, found, chain);
+			} else {
+				addChained(((Line) shape).start, found, chain);
+				addChained(((Line) shape).end, found, chain);
+			}
+		}
+		ArrayList<Shape> result = new ArrayList<Shape>();
+		for (Object shape : found.keySet()) {
+			if (shape instanceof Shape)
+				result.add((Shape) shape);
+		}
+		return result.toArray(new Shape[result.size()]);
+	}
+
+	private static void addChained(Object shape, IdentityHashMap<Object, Boolean> found, ArrayList<Object> chain) {
+		if (shape != null && found.put(shape, Boolean.TRUE) == null)
+			chain.add(shape);
+	}
+}
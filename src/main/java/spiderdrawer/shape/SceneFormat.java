@@ -0,0 +1,920 @@
+package spiderdrawer.shape;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import spiderdrawer.shape.containers.Container;
+import spiderdrawer.shape.containers.MultiContainer;
+import spiderdrawer.shape.containers.SingleContainer;
+import spiderdrawer.shape.interfaces.Shape;
+
+/*
+ * The binary .spi format: the bytes "SPI", the format version, the number of records and how many of them are
+ * shapes of the list, then a record per object. A record is a type tag, the length of its fields and the fields,
+ * so a reader can skip tags it doesn't know.
+ * Numbers are varints, zigzag encoded when they can be negative, and each point of a freeform after the first is
+ * written as its difference from the one before, so a pen sample usually takes a byte per value.
+ *
+ * An object's id is the index of its record. The shapes of the list come first, in order, followed by the objects
+ * they refer to that aren't in the list, such as spiders and their labels. A record holds the fields the object is
+ * constructed from, then its references to other objects by id, then every container of the object in a fixed
+ * order, each entry as the id of the object and which of that object's containers holds the other side.
+ * Loading creates every object, then sets the references and fills both sides of each container as they were,
+ * so none of the relations are worked out again. The journal writes the objects that changed as the same records
+ * through writeStates(), each with its id, and reads them back onto the objects it already has.
+ *
+ * Version 1 records had only the construction fields of freeforms, labels and circles, which are read by the same
+ * codecs and left unattached. Files that don't start with "SPI" are in the older text format.
+ */
+public class SceneFormat {
+
+	public final static int VERSION = 2;
+
+	private final static byte[] MAGIC = {'S', 'P', 'I'};
+
+	private final static int FREEFORM = 1;
+	private final static int LABEL = 2;
+	private final static int CIRCLE = 3;
+	private final static int BOX = 4;
+	private final static int CONNECTIVE = 5;
+	private final static int LINE = 6;
+	private final static int POINT = 7;
+	private final static int SHADING = 8;
+	private final static int SPIDER = 9;
+
+	/*
+	 * Writes and reads the records of one type. create() reads the construction fields, set() reads them into an
+	 * object that already exists, and link() reads the references.
+	 */
+	private static abstract class Codec {
+		abstract void write(Object object, Output out);
+		abstract Object create(Input in, ShapeList shapeList) throws IOException;
+		abstract void set(Object object, Input in) throws IOException;
+		void writeLinks(Object object, Output out, Table table) {}
+		void link(Object object, Input in, Table table) throws IOException {}
+	}
+
+	private final static Codec[] CODECS = new Codec[10];
+
+	static {
+		CODECS[FREEFORM] = new Codec() {
+			@Override
+			void write(Object object, Output out) {
+				Freeform freeform = (Freeform) object;
+				out.writeVarint(freeform.size);
+				int x = 0, y = 0;
+				long time = 0;
+				for (int i = 0; i < freeform.size; i++) {
+					out.writeSigned(freeform.xs[i] - x);
+					out.writeSigned(freeform.ys[i] - y);
+					out.writeSigned(freeform.times[i] - time);
+					x = freeform.xs[i];
+					y = freeform.ys[i];
+					time = freeform.times[i];
+				}
+			}
+			@Override
+			Object create(Input in, ShapeList shapeList) throws IOException {
+				int size = in.readCount();
+				if (size > in.remaining()/3)
+					throw new IOException("Malformed freeform in .spi file");
+				Freeform freeform = new Freeform(size);
+				int x = 0, y = 0;
+				long time = 0;
+				for (int i = 0; i < size; i++) {
+					x += in.readSigned();
+					y += in.readSigned();
+					time += in.readSignedLong();
+					freeform.addPoint(x, y, time);
+				}
+				return freeform;
+			}
+			/*
+			 * A stroke doesn't change once it's drawn, so its points are only read past.
+			 */
+			@Override
+			void set(Object object, Input in) throws IOException {
+				create(in, null);
+			}
+			@Override
+			void writeLinks(Object object, Output out, Table table) {
+				out.writeBoolean(((Freeform) object).removed);
+			}
+			@Override
+			void link(Object object, Input in, Table table) throws IOException {
+				((Freeform) object).removed = in.readBoolean();
+			}
+		};
+		CODECS[LABEL] = new Codec() {
+			@Override
+			void write(Object object, Output out) {
+				Label label = (Label) object;
+				out.writeVarint(label.letter);
+				out.writeSigned(label.number);
+				out.writeSigned(label.center.x);
+				out.writeSigned(label.center.y);
+			}
+			@Override
+			Object create(Input in, ShapeList shapeList) throws IOException {
+				char letter = (char) in.readVarint();
+				int number = in.readSigned();
+				int x = in.readSigned();
+				int y = in.readSigned();
+				Label label = new Label(letter, number, x, y);
+				label.shapeList = shapeList;
+				return label;
+			}
+			/*
+			 * A label keeps the letter it was recognised as, which its size comes from.
+			 */
+			@Override
+			void set(Object object, Input in) throws IOException {
+				Label label = (Label) object;
+				in.readVarint();
+				label.number = in.readSigned();
+				label.center.x = in.readSigned();
+				label.center.y = in.readSigned();
+			}
+			@Override
+			void writeLinks(Object object, Output out, Table table) {
+				ArrayList<Label> sameLabels = ((Label) object).sameLabels;
+				out.writeVarint((sameLabels == null)? 0 : sameLabels.size() + 1);
+				for (int i = 0; sameLabels != null && i < sameLabels.size(); i++)
+					table.writeRef(out, sameLabels.get(i));
+			}
+			@Override
+			void link(Object object, Input in, Table table) throws IOException {
+				int size = in.readCount();
+				if (size == 0) {
+					((Label) object).sameLabels = null;
+					return;
+				}
+				ArrayList<Label> sameLabels = new ArrayList<Label>();
+				for (int i = 0; i < size - 1; i++)
+					sameLabels.add(table.readRef(in, Label.class));
+				((Label) object).sameLabels = sameLabels;
+			}
+		};
+		CODECS[CIRCLE] = new Codec() {
+			@Override
+			void write(Object object, Output out) {
+				Circle circle = (Circle) object;
+				out.writeSigned(circle.center.x);
+				out.writeSigned(circle.center.y);
+				out.writeSigned(circle.radius);
+			}
+			@Override
+			Object create(Input in, ShapeList shapeList) throws IOException {
+				int x = in.readSigned();
+				int y = in.readSigned();
+				int radius = in.readSigned();
+				Circle circle = new Circle(x, y, radius);
+				circle.shapeList = shapeList;
+				return circle;
+			}
+			@Override
+			void set(Object object, Input in) throws IOException {
+				Circle circle = (Circle) object;
+				circle.center.x = in.readSigned();
+				circle.center.y = in.readSigned();
+				circle.radius = in.readSigned();
+			}
+			@Override
+			void writeLinks(Object object, Output out, Table table) {
+				out.writeBoolean(((Circle) object).moveLabel);
+			}
+			@Override
+			void link(Object object, Input in, Table table) throws IOException {
+				((Circle) object).moveLabel = in.readBoolean();
+			}
+		};
+		CODECS[BOX] = new Codec() {
+			@Override
+			void write(Object object, Output out) {
+				Box box = (Box) object;
+				out.writeSigned(box.topLeft.x);
+				out.writeSigned(box.topLeft.y);
+				out.writeSigned(box.width);
+				out.writeSigned(box.height);
+			}
+			@Override
+			Object create(Input in, ShapeList shapeList) throws IOException {
+				int x = in.readSigned();
+				int y = in.readSigned();
+				int width = in.readSigned();
+				int height = in.readSigned();
+				Box box = new Box(x, y, width, height);
+				box.createContainers();
+				box.shapeList = shapeList;
+				return box;
+			}
+			@Override
+			void set(Object object, Input in) throws IOException {
+				Box box = (Box) object;
+				box.topLeft.x = in.readSigned();
+				box.topLeft.y = in.readSigned();
+				box.width = in.readSigned();
+				box.height = in.readSigned();
+			}
+			@Override
+			void writeLinks(Object object, Output out, Table table) {
+				Box box = (Box) object;
+				out.writeVarint(box.letter);
+				out.writeBoolean(box.leftConnective);
+			}
+			@Override
+			void link(Object object, Input in, Table table) throws IOException {
+				Box box = (Box) object;
+				box.letter = (char) in.readVarint();
+				box.leftConnective = in.readBoolean();
+			}
+		};
+		CODECS[CONNECTIVE] = new Codec() {
+			@Override
+			void write(Object object, Output out) {
+				Connective connective = (Connective) object;
+				out.writeVarint(connective.logical.ordinal());
+				out.writeSigned(connective.center.x);
+				out.writeSigned(connective.center.y);
+			}
+			@Override
+			Object create(Input in, ShapeList shapeList) throws IOException {
+				Logical logical = Logical.create(in.readCount());
+				if (logical == null)
+					throw new IOException("Unknown connective in .spi file");
+				int x = in.readSigned();
+				int y = in.readSigned();
+				Connective connective = new Connective(logical, new Point(x, y));
+				connective.createContainers();
+				connective.shapeList = shapeList;
+				return connective;
+			}
+			/*
+			 * Likewise a connective keeps its logical.
+			 */
+			@Override
+			void set(Object object, Input in) throws IOException {
+				Connective connective = (Connective) object;
+				in.readCount();
+				connective.center.x = in.readSigned();
+				connective.center.y = in.readSigned();
+			}
+		};
+		CODECS[LINE] = new Codec() {
+			@Override
+			void write(Object object, Output out) {
+				Line line = (Line) object;
+				out.writeSigned(line.start.x);
+				out.writeSigned(line.start.y);
+				out.writeSigned(line.end.x);
+				out.writeSigned(line.end.y);
+			}
+			@Override
+			Object create(Input in, ShapeList shapeList) throws IOException {
+				int startX = in.readSigned();
+				int startY = in.readSigned();
+				int endX = in.readSigned();
+				int endY = in.readSigned();
+				Line line = new Line(startX, startY, endX, endY);
+				line.createContainers();
+				line.shapeList = shapeList;
+				return line;
+			}
+			/*
+			 * The ends are set on the line's own points, which link() replaces with the points they are connected to.
+			 */
+			@Override
+			void set(Object object, Input in) throws IOException {
+				Line line = (Line) object;
+				int startX = in.readSigned();
+				int startY = in.readSigned();
+				int endX = in.readSigned();
+				int endY = in.readSigned();
+				if (line.start.circles != null) {
+					line.start = new Point(startX, startY);
+				} else {
+					line.start.x = startX;
+					line.start.y = startY;
+				}
+				if (line.end.circles != null) {
+					line.end = new Point(endX, endY);
+				} else {
+					line.end.x = endX;
+					line.end.y = endY;
+				}
+			}
+			/*
+			 * An end connected to a point is that point, otherwise the line's own.
+			 */
+			@Override
+			void writeLinks(Object object, Output out, Table table) {
+				Line line = (Line) object;
+				out.writeBoolean(line.startSet);
+				out.writeBoolean(line.endSet);
+				table.writeRef(out, (line.start.circles != null)? line.start : null);
+				table.writeRef(out, (line.end.circles != null)? line.end : null);
+			}
+			@Override
+			void link(Object object, Input in, Table table) throws IOException {
+				Line line = (Line) object;
+				line.startSet = in.readBoolean();
+				line.endSet = in.readBoolean();
+				Point start = table.readRef(in, Point.class);
+				if (start != null)
+					line.start = start;
+				Point end = table.readRef(in, Point.class);
+				if (end != null)
+					line.end = end;
+			}
+		};
+		CODECS[POINT] = new Codec() {
+			@Override
+			void write(Object object, Output out) {
+				Point point = (Point) object;
+				out.writeSigned(point.x);
+				out.writeSigned(point.y);
+			}
+			@Override
+			Object create(Input in, ShapeList shapeList) throws IOException {
+				int x = in.readSigned();
+				int y = in.readSigned();
+				Point point = new Point(x, y);
+				point.createContainers();
+				point.shapeList = shapeList;
+				return point;
+			}
+			@Override
+			void set(Object object, Input in) throws IOException {
+				Point point = (Point) object;
+				point.x = in.readSigned();
+				point.y = in.readSigned();
+			}
+			@Override
+			void writeLinks(Object object, Output out, Table table) {
+				Point point = (Point) object;
+				table.writeRef(out, point.line1);
+				out.writeBoolean(point.line1Start);
+				table.writeRef(out, point.line2);
+				out.writeBoolean(point.line2Start);
+				table.writeRef(out, point.label);
+			}
+			@Override
+			void link(Object object, Input in, Table table) throws IOException {
+				Point point = (Point) object;
+				point.line1 = table.readRef(in, Line.class);
+				point.line1Start = in.readBoolean();
+				point.line2 = table.readRef(in, Line.class);
+				point.line2Start = in.readBoolean();
+				point.label = table.readRef(in, Label.class);
+			}
+		};
+		CODECS[SHADING] = new Codec() {
+			@Override
+			void write(Object object, Output out) {
+			}
+			@Override
+			Object create(Input in, ShapeList shapeList) throws IOException {
+				Shading shading = new Shading();
+				shading.createContainers();
+				shading.shapeList = shapeList;
+				return shading;
+			}
+			@Override
+			void set(Object object, Input in) throws IOException {
+			}
+			@Override
+			void writeLinks(Object object, Output out, Table table) {
+				table.writeRef(out, ((Shading) object).freeform);
+			}
+			@Override
+			void link(Object object, Input in, Table table) throws IOException {
+				((Shading) object).freeform = table.readRef(in, Freeform.class);
+			}
+		};
+		CODECS[SPIDER] = new Codec() {
+			@Override
+			void write(Object object, Output out) {
+			}
+			@Override
+			Object create(Input in, ShapeList shapeList) throws IOException {
+				return new Spider();
+			}
+			@Override
+			void set(Object object, Input in) throws IOException {
+			}
+			@Override
+			void writeLinks(Object object, Output out, Table table) {
+				Spider spider = (Spider) object;
+				table.writeRef(out, spider.label);
+				table.writeRef(out, spider.labelledPoint);
+				out.writeBoolean(spider.complete);
+			}
+			@Override
+			void link(Object object, Input in, Table table) throws IOException {
+				Spider spider = (Spider) object;
+				spider.label = table.readRef(in, Label.class);
+				spider.labelledPoint = table.readRef(in, Point.class);
+				spider.complete = in.readBoolean();
+			}
+		};
+	}
+
+	private static int tag(Object object) {
+		if (object instanceof Freeform)
+			return FREEFORM;
+		if (object instanceof Label)
+			return LABEL;
+		if (object instanceof Circle)
+			return CIRCLE;
+		if (object instanceof Box)
+			return BOX;
+		if (object instanceof Connective)
+			return CONNECTIVE;
+		if (object instanceof Line)
+			return LINE;
+		if (object instanceof Point)
+			return POINT;
+		if (object instanceof Shading)
+			return SHADING;
+		if (object instanceof Spider)
+			return SPIDER;
+		return 0;
+	}
+
+	/*
+	 * The containers of an object, in the order they are saved.
+	 */
+	static Container<?, ?>[] containers(Object object) {
+		if (object instanceof Box) {
+			Box box = (Box) object;
+			return new Container<?, ?>[] {box.circles, box.overlapCircles, box.outerCircles, box.lines, box.overlapLines,
+					box.connective, box.innerConnectives, box.innerBoxes, box.outerBox, box.overlapBoxes, box.labels,
+					box.points, box.spiders, box.shading};
+		} else if (object instanceof Circle) {
+			Circle circle = (Circle) object;
+			return new Container<?, ?>[] {circle.label, circle.points, circle.shadings, circle.boxes, circle.innerBoxes,
+					circle.overlapBoxes, circle.overlapCircles};
+		} else if (object instanceof Connective) {
+			Connective connective = (Connective) object;
+			return new Container<?, ?>[] {connective.leftBox, connective.rightBox, connective.outerBox};
+		} else if (object instanceof Label) {
+			Label label = (Label) object;
+			return new Container<?, ?>[] {label.circle, label.box};
+		} else if (object instanceof Line) {
+			Line line = (Line) object;
+			return new Container<?, ?>[] {line.boxes, line.overlapBoxes, line.spider};
+		} else if (object instanceof Point) {
+			Point point = (Point) object;
+			return new Container<?, ?>[] {point.circles, point.boxes, point.spider};
+		} else if (object instanceof Shading) {
+			Shading shading = (Shading) object;
+			return new Container<?, ?>[] {shading.box, shading.included};
+		} else if (object instanceof Spider) {
+			Spider spider = (Spider) object;
+			return new Container<?, ?>[] {spider.box, spider.lines, spider.points};
+		}
+		return new Container<?, ?>[0];
+	}
+
+	public static boolean isBinary(byte[] data) {
+		if (data == null || data.length < MAGIC.length)
+			return false;
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (data[i] != MAGIC[i])
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Writes the shapes of the list, in order, with everything they refer to.
+	 */
+	public static byte[] write(List<Shape> shapes) {
+		return write(shapes, new Table());
+	}
+
+	/*
+	 * Writes the shapes, leaving the ids of the objects written in the table.
+	 */
+	static byte[] write(List<Shape> shapes, Table table) {
+		for (int i = 0; i < shapes.size(); i++) {
+			if (tag(shapes.get(i)) != 0)
+				table.id(shapes.get(i));
+		}
+		int listed = table.objects.size();
+		Output records = new Output();
+		Output fields = new Output();
+		for (int i = 0; i < table.objects.size(); i++) {
+			Object object = table.objects.get(i);
+			int tag = tag(object);
+			fields.reset();
+			CODECS[tag].write(object, fields);
+			CODECS[tag].writeLinks(object, fields, table);
+			writeContainers(object, fields, table);
+			records.writeVarint(tag);
+			records.writeVarint(fields.size());
+			records.write(fields.buffer(), fields.size());
+		}
+		Output out = new Output();
+		out.write(MAGIC, MAGIC.length);
+		out.writeVarint(VERSION);
+		out.writeVarint(table.objects.size());
+		out.writeVarint(listed);
+		out.write(records.buffer(), records.size());
+		return out.toByteArray();
+	}
+
+	/*
+	 * Reads the shapes of the list from a file written by write(), with their relations, attached to shapeList.
+	 * The shapes aren't added to shapeList. Shapes of version 1 files are left unattached, as they were loaded.
+	 */
+	public static ArrayList<Shape> read(byte[] data, ShapeList shapeList) throws IOException {
+		if (!isBinary(data))
+			throw new IOException("Not a binary .spi file");
+		Input in = new Input(data, MAGIC.length, data.length);
+		int version = in.readCount();
+		if (version > VERSION)
+			throw new IOException("Unsupported .spi version " + version);
+		int count = in.readCount();
+		int listed = (version >= 2)? in.readCount() : count;
+		if (listed > count || count > in.remaining())
+			throw new IOException("Malformed .spi file");
+		Table table = new Table();
+		Codec[] codecs = new Codec[count];
+		Input[] links = new Input[count];
+		for (int i = 0; i < count; i++) {
+			int tag = in.readCount();
+			Input fields = in.slice(in.readCount());
+			if (tag < CODECS.length && CODECS[tag] != null) {
+				codecs[i] = CODECS[tag];
+				links[i] = fields;
+				table.objects.add(codecs[i].create(fields, (version >= 2)? shapeList : null));
+			} else {
+				table.objects.add(null);
+			}
+		}
+		if (version >= 2) {
+			for (int i = 0; i < count; i++) {
+				if (codecs[i] == null)
+					continue;
+				codecs[i].link(table.objects.get(i), links[i], table);
+				readContainers(table.objects.get(i), links[i], table);
+			}
+		}
+		ArrayList<Shape> shapes = new ArrayList<Shape>(listed);
+		for (int i = 0; i < listed; i++) {
+			if (table.objects.get(i) instanceof Shape)
+				shapes.add((Shape) table.objects.get(i));
+		}
+		return shapes;
+	}
+
+	/*
+	 * Writes the objects as they are now, for the journal, as a count and a record per object: its id in the table,
+	 * then the record it has in a file. Objects they refer to that aren't in the table yet are given ids and written
+	 * too, and so are the spiders and spider labels they refer to, which have no shape list to report changes to.
+	 */
+	static void writeStates(Collection<?> objects, Output out, Table table) {
+		ArrayList<Object> writing = new ArrayList<Object>();
+		IdentityHashMap<Object, Boolean> queued = new IdentityHashMap<Object, Boolean>();
+		int known = table.objects.size();
+		for (Object object : objects) {
+			if (tag(object) != 0 && !queued.containsKey(object)) {
+				table.id(object);
+				writing.add(object);
+				queued.put(object, Boolean.TRUE);
+			}
+		}
+		Output records = new Output();
+		Output fields = new Output();
+		for (int i = 0; i < writing.size(); i++) {
+			Object object = writing.get(i);
+			int tag = tag(object);
+			fields.reset();
+			CODECS[tag].write(object, fields);
+			CODECS[tag].writeLinks(object, fields, table);
+			writeContainers(object, fields, table);
+			records.writeVarint(table.id(object));
+			records.writeVarint(tag);
+			records.writeVarint(fields.size());
+			records.write(fields.buffer(), fields.size());
+			Container<?, ?>[] containers = containers(object);
+			for (int j = 0; j < containers.length; j++) {
+				if (containers[j] instanceof SingleContainer)
+					queueUnreported(((SingleContainer<?, ?>) containers[j]).get(), writing, queued);
+				else if (containers[j] instanceof MultiContainer)
+					for (int k = 0; k < ((MultiContainer<?, ?>) containers[j]).size(); k++)
+						queueUnreported(((MultiContainer<?, ?>) containers[j]).get(k), writing, queued);
+			}
+			if (object instanceof Point)
+				queueUnreported(((Point) object).label, writing, queued);
+			else if (object instanceof Spider)
+				queueUnreported(((Spider) object).label, writing, queued);
+			for (; known < table.objects.size(); known++) {
+				Object other = table.objects.get(known);
+				if (!queued.containsKey(other)) {
+					writing.add(other);
+					queued.put(other, Boolean.TRUE);
+				}
+			}
+		}
+		out.writeVarint(writing.size());
+		out.write(records.buffer(), records.size());
+	}
+
+	/*
+	 * Writes the fields and links of an object, its record without its containers, giving ids to the objects they
+	 * refer to without writing them.
+	 */
+	static void writeFields(Object object, Output out, Table table) {
+		int tag = tag(object);
+		CODECS[tag].write(object, out);
+		CODECS[tag].writeLinks(object, out, table);
+	}
+
+	/*
+	 * Sets an object to fields and links written by writeFields().
+	 */
+	static void readFields(Object object, Input in, Table table) throws IOException {
+		int tag = tag(object);
+		CODECS[tag].set(object, in);
+		CODECS[tag].link(object, in, table);
+	}
+
+	/*
+	 * The objects the record of an object refers to, through its links and containers.
+	 */
+	static List<Object> related(Object object) {
+		Table table = new Table();
+		int tag = tag(object);
+		if (tag == 0)
+			return table.objects;
+		table.id(object);
+		Output fields = new Output();
+		CODECS[tag].writeLinks(object, fields, table);
+		writeContainers(object, fields, table);
+		return table.objects.subList(1, table.objects.size());
+	}
+
+	private static void queueUnreported(Object object, ArrayList<Object> writing, IdentityHashMap<Object, Boolean> queued) {
+		boolean unreported = object instanceof Spider || (object instanceof Label && ((Label) object).shapeList == null);
+		if (unreported && !queued.containsKey(object)) {
+			writing.add(object);
+			queued.put(object, Boolean.TRUE);
+		}
+	}
+
+	/*
+	 * Reads records written by writeStates(), creating the objects the table doesn't have and setting the others
+	 * to their state, relations included. Returns the objects read.
+	 */
+	static ArrayList<Object> readStates(Input in, Table table, ShapeList shapeList) throws IOException {
+		int count = in.readCount();
+		if (count > in.remaining())
+			throw new IOException("Malformed journal record");
+		ArrayList<Object> objects = new ArrayList<Object>(count);
+		Codec[] codecs = new Codec[count];
+		Input[] links = new Input[count];
+		for (int i = 0; i < count; i++) {
+			int id = in.readCount();
+			int tag = in.readCount();
+			Input fields = in.slice(in.readCount());
+			if (tag >= CODECS.length || CODECS[tag] == null)
+				throw new IOException("Unknown object in journal record");
+			Object object = table.get(id);
+			if (object == null) {
+				object = CODECS[tag].create(fields, shapeList);
+				table.put(id, object);
+			} else if (tag(object) == tag) {
+				CODECS[tag].set(object, fields);
+			} else {
+				throw new IOException("Malformed journal record");
+			}
+			objects.add(object);
+			codecs[i] = CODECS[tag];
+			links[i] = fields;
+		}
+		for (int i = 0; i < count; i++) {
+			codecs[i].link(objects.get(i), links[i], table);
+			readContainers(objects.get(i), links[i], table);
+		}
+		return objects;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static void writeContainers(Object object, Output out, Table table) {
+		Container[] containers = containers(object);
+		for (int i = 0; i < containers.length; i++) {
+			if (containers[i] instanceof SingleContainer) {
+				SingleContainer single = (SingleContainer) containers[i];
+				table.writeRef(out, single.get());
+				if (single.get() != null)
+					writeSlot(out, single.get(), single.getContainer());
+			} else if (containers[i] instanceof MultiContainer) {
+				MultiContainer multi = (MultiContainer) containers[i];
+				out.writeVarint(multi.size());
+				for (int j = 0; j < multi.size(); j++) {
+					table.writeRef(out, multi.get(j));
+					if (multi.get(j) != null)
+						writeSlot(out, multi.get(j), multi.getContainer(j));
+				}
+			} else {
+				out.writeVarint(0);
+			}
+		}
+	}
+
+	/*
+	 * Replaces what the containers hold, on this side only, as the other side is read with the other object.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static void readContainers(Object object, Input in, Table table) throws IOException {
+		Container[] containers = containers(object);
+		for (int i = 0; i < containers.length; i++) {
+			if (containers[i] instanceof SingleContainer) {
+				Object other = table.readRef(in);
+				((SingleContainer) containers[i]).restore(other, (other == null)? null : readSlot(in, other));
+			} else {
+				MultiContainer multi = (MultiContainer) containers[i];
+				if (!multi.isEmpty())
+					multi.clear();
+				int size = in.readCount();
+				for (int j = 0; j < size; j++) {
+					Object other = table.readRef(in);
+					multi.restore(other, (other == null)? null : readSlot(in, other));
+				}
+			}
+		}
+	}
+
+	/*
+	 * Which of the other object's containers holds this side of the relation.
+	 */
+	private static void writeSlot(Output out, Object other, Container<?, ?> container) {
+		Container<?, ?>[] containers = containers(other);
+		int slot = 0;
+		for (int i = 0; i < containers.length; i++) {
+			if (containers[i] == container)
+				slot = i + 1;
+		}
+		out.writeVarint(slot);
+	}
+
+	private static Container<?, ?> readSlot(Input in, Object other) throws IOException {
+		int slot = in.readCount();
+		if (slot == 0)
+			return null;
+		Container<?, ?>[] containers = containers(other);
+		if (slot > containers.length)
+			throw new IOException("Malformed container in .spi file");
+		return containers[slot - 1];
+	}
+
+	/*
+	 * The objects of a file by id.
+	 */
+	static class Table {
+
+		final ArrayList<Object> objects = new ArrayList<Object>();
+		private final IdentityHashMap<Object, Integer> ids = new IdentityHashMap<Object, Integer>();
+
+		int id(Object object) {
+			Integer id = ids.get(object);
+			if (id == null) {
+				id = objects.size();
+				objects.add(object);
+				ids.put(object, id);
+			}
+			return id;
+		}
+
+		Object get(int id) {
+			return (id < objects.size())? objects.get(id) : null;
+		}
+
+		boolean contains(Object object) {
+			return ids.containsKey(object);
+		}
+
+		void put(int id, Object object) {
+			while (objects.size() <= id)
+				objects.add(null);
+			objects.set(id, object);
+			ids.put(object, id);
+		}
+
+		void writeRef(Output out, Object object) {
+			out.writeVarint((object == null || tag(object) == 0)? 0 : id(object) + 1);
+		}
+
+		Object readRef(Input in) throws IOException {
+			int ref = in.readCount();
+			if (ref > objects.size())
+				throw new IOException("Malformed reference in .spi file");
+			return (ref == 0)? null : objects.get(ref - 1);
+		}
+
+		<T> T readRef(Input in, Class<T> type) throws IOException {
+			Object object = readRef(in);
+			if (object != null && !type.isInstance(object))
+				throw new IOException("Malformed reference in .spi file");
+			return type.cast(object);
+		}
+	}
+
+	static class Output extends ByteArrayOutputStream {
+
+		void writeVarint(long value) {
+			while ((value & ~0x7FL) != 0) {
+				write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			write((int) value);
+		}
+
+		void writeSigned(long value) {
+			writeVarint((value << 1) ^ (value >> 63));
+		}
+
+		void writeBoolean(boolean value) {
+			write(value? 1 : 0);
+		}
+
+		void write(byte[] bytes, int length) {
+			write(bytes, 0, length);
+		}
+
+		byte[] buffer() {
+			return buf;
+		}
+	}
+
+	static class Input {
+
+		private final byte[] data;
+		private int pos;
+		private final int end;
+
+		Input(byte[] data, int pos, int end) {
+			this.data = data;
+			this.pos = pos;
+			this.end = end;
+		}
+
+		long readVarint() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				if (pos >= end)
+					throw new IOException("Truncated .spi file");
+				byte b = data[pos++];
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+			throw new IOException("Malformed varint in .spi file");
+		}
+
+		long readSignedLong() throws IOException {
+			long value = readVarint();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		int readSigned() throws IOException {
+			return (int) readSignedLong();
+		}
+
+		int readCount() throws IOException {
+			long value = readVarint();
+			if (value < 0 || value > Integer.MAX_VALUE)
+				throw new IOException("Malformed count in .spi file");
+			return (int) value;
+		}
+
+		boolean readBoolean() throws IOException {
+			return readVarint() != 0;
+		}
+
+		int remaining() {
+			return end - pos;
+		}
+
+		long checksum() {
+			CRC32 crc = new CRC32();
+			crc.update(data, pos, end - pos);
+			return crc.getValue();
+		}
+
+		Input slice(int length) throws IOException {
+			if (length > end - pos)
+				throw new IOException("Truncated .spi file");
+			Input slice = new Input(data, pos, pos + length);
+			pos += length;
+			return slice;
+		}
+	}
+}
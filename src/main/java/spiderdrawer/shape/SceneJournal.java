@@ -0,0 +1,283 @@
+package spiderdrawer.shape;
+
+import static spiderdrawer.Parameters.AUTOSAVE_CHECKPOINT_INTERVAL;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.zip.CRC32;
+
+import spiderdrawer.shape.SceneFormat.Input;
+import spiderdrawer.shape.SceneFormat.Output;
+import spiderdrawer.shape.SceneFormat.Table;
+import spiderdrawer.shape.interfaces.Shape;
+
+/*
+ * Autosave of the scene as a checkpoint, a .spi file of the whole scene, and a journal of the changes made since,
+ * each appended as a record when it's made, so saving a change costs only the change.
+ * Every AUTOSAVE_CHECKPOINT_INTERVAL records a new checkpoint is written and the journal starts again.
+ *
+ * The shape list keeps what changed between records: the shapes and other objects whose geometry or relations
+ * changed, and the shapes added to and removed from the list. record() appends them as the state each object is
+ * in, written as SceneFormat writes it, relations included, with the ids of the checkpoint's objects and ids given
+ * out in order to the objects written after. Replay sets the objects to those states instead of working anything
+ * out again, so the scene comes back exactly as it was, whatever order the relations were found in.
+ * A change the journal can't express, such as the list being reordered, writes a checkpoint instead.
+ *
+ * The journal starts with the bytes "SPJ", its version and the length and checksum of the checkpoint it follows.
+ * A record is its length, its checksum, the states, then the ids of the shapes removed from the list and of those
+ * added to its end. Each record is forced to the disk once it's appended. Files are replaced by renaming a new one,
+ * forced to the disk, over them, the checkpoint first, so after a crash a journal that doesn't follow the checkpoint
+ * is from before it. A record that can't be written is replaced by a new checkpoint, and if that can't be written
+ * either, journaling stops.
+ * Recovery loads the checkpoint and replays the records up to the first one that wasn't written whole.
+ */
+public class SceneJournal {
+
+	public final static int VERSION = 2;
+
+	private final static byte[] MAGIC = {'S', 'P', 'J'};
+
+	private final File checkpointFile;
+	private final File journalFile;
+	private final ShapeList shapeList;
+	private Table table;
+	private int records;
+	private FileOutputStream out;
+
+	/*
+	 * What changed in the scene since the last record, gathered by the shape list.
+	 */
+	static class Changes {
+
+		final IdentityHashMap<Object, Boolean> changed = new IdentityHashMap<Object, Boolean>();
+		final IdentityHashMap<Shape, Boolean> removed = new IdentityHashMap<Shape, Boolean>();
+		final ArrayList<Shape> added = new ArrayList<Shape>();
+		boolean reordered;
+
+		void changed(Object object) {
+			changed.put(object, Boolean.TRUE);
+		}
+
+		/*
+		 * A shape added again after it was removed ends up at the end of the list.
+		 */
+		void added(Shape shape) {
+			added.remove(shape);
+			added.add(shape);
+			changed.put(shape, Boolean.TRUE);
+		}
+
+		void removed(Shape shape) {
+			added.remove(shape);
+			removed.put(shape, Boolean.TRUE);
+			changed.put(shape, Boolean.TRUE);
+		}
+
+		boolean isEmpty() {
+			return changed.isEmpty() && removed.isEmpty() && added.isEmpty() && !reordered;
+		}
+	}
+
+	public SceneJournal(File checkpointFile, File journalFile, ShapeList shapeList) {
+		this.checkpointFile = checkpointFile;
+		this.journalFile = journalFile;
+		this.shapeList = shapeList;
+	}
+
+	/*
+	 * Appends what changed since the last record, if anything did.
+	 */
+	public void record() {
+		if (out == null)
+			return;
+		Changes changes = shapeList.takeChanges();
+		if (changes.reordered) {
+			checkpoint();
+			return;
+		}
+		if (changes.isEmpty())
+			return;
+		Output body = new Output();
+		SceneFormat.writeStates(changes.changed.keySet(), body, table);
+		ArrayList<Integer> removed = new ArrayList<Integer>();
+		for (Shape shape : changes.removed.keySet()) {
+			if (table.contains(shape))
+				removed.add(table.id(shape));
+		}
+		body.writeVarint(removed.size());
+		for (int i = 0; i < removed.size(); i++)
+			body.writeVarint(removed.get(i));
+		body.writeVarint(changes.added.size());
+		for (int i = 0; i < changes.added.size(); i++)
+			body.writeVarint(table.id(changes.added.get(i)));
+		Output record = new Output();
+		record.writeVarint(body.size());
+		record.writeVarint(checksum(body.buffer(), body.size()));
+		record.write(body.buffer(), body.size());
+		try {
+			out.write(record.buffer(), 0, record.size());
+			out.getChannel().force(false);
+		} catch (IOException e) {
+			e.printStackTrace();
+			checkpoint();
+			return;
+		}
+		if (++records >= AUTOSAVE_CHECKPOINT_INTERVAL)
+			checkpoint();
+	}
+
+	/*
+	 * Writes the whole scene as the checkpoint and starts an empty journal after it.
+	 */
+	public void checkpoint() {
+		close();
+		records = 0;
+		shapeList.takeChanges();
+		table = new Table();
+		byte[] checkpoint = SceneFormat.write(shapeList, table);
+		Output header = new Output();
+		header.write(MAGIC, MAGIC.length);
+		header.writeVarint(VERSION);
+		header.writeVarint(checkpoint.length);
+		header.writeVarint(checksum(checkpoint, checkpoint.length));
+		try {
+			Files.createDirectories(checkpointFile.getAbsoluteFile().getParentFile().toPath());
+			replace(checkpointFile, checkpoint);
+			replace(journalFile, header.toByteArray());
+			out = new FileOutputStream(journalFile, true);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/*
+	 * Whether appended records are being kept, from the last checkpoint until discard().
+	 */
+	public boolean isOpen() {
+		return out != null;
+	}
+
+	/*
+	 * Whether there's an autosave left to recover.
+	 */
+	public boolean exists() {
+		return checkpointFile.isFile();
+	}
+
+	/*
+	 * The checkpoint to load before replay(), or null if there isn't one.
+	 */
+	public byte[] readCheckpoint() {
+		if (!checkpointFile.isFile())
+			return null;
+		try {
+			return Files.readAllBytes(checkpointFile.toPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/*
+	 * Replays the journal onto the scene loaded from the checkpoint, which must be in the list as it was loaded:
+	 * writing it again gives the ids of its objects, and if it doesn't give the checkpoint back nothing is replayed.
+	 * Returns the number of records replayed.
+	 */
+	public int replay(byte[] checkpoint) {
+		if (!journalFile.isFile())
+			return 0;
+		Table table = new Table();
+		if (!Arrays.equals(SceneFormat.write(shapeList, table), checkpoint))
+			return 0;
+		int replayed = 0;
+		try {
+			byte[] data = Files.readAllBytes(journalFile.toPath());
+			Input in = new Input(data, MAGIC.length, data.length);
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (data.length <= i || data[i] != MAGIC[i])
+					throw new IOException("Not a journal");
+			}
+			if (in.readCount() != VERSION || in.readCount() != checkpoint.length || in.readVarint() != checksum(checkpoint, checkpoint.length))
+				return 0;
+			while (in.remaining() > 0) {
+				int length = in.readCount();
+				long checksum = in.readVarint();
+				Input record = in.slice(length);
+				if (record.checksum() != checksum)
+					throw new IOException("Damaged journal record");
+				apply(record, table);
+				replayed++;
+			}
+		} catch (IOException e) {
+			/* The records before the damaged one are kept. */
+			e.printStackTrace();
+		}
+		return replayed;
+	}
+
+	/*
+	 * Nothing is recomputed: the states hold the relations as they were, and the shapes are only updated so that
+	 * the list's index and the caches drawn from them follow their geometry.
+	 */
+	private void apply(Input record, Table table) throws IOException {
+		ArrayList<Object> states = SceneFormat.readStates(record, table, shapeList);
+		int removed = record.readCount();
+		for (int i = 0; i < removed; i++)
+			shapeList.remove(table.get(record.readCount()));
+		int added = record.readCount();
+		for (int i = 0; i < added; i++) {
+			Object shape = table.get(record.readCount());
+			if (!(shape instanceof Shape))
+				throw new IOException("Malformed journal record");
+			shapeList.add((Shape) shape);
+		}
+		for (int i = 0; i < states.size(); i++) {
+			if (states.get(i) instanceof Shape)
+				shapeList.update((Shape) states.get(i));
+		}
+	}
+
+	/*
+	 * Stops journaling and deletes the autosave, when the scene has been closed normally.
+	 */
+	public void discard() {
+		close();
+		checkpointFile.delete();
+		journalFile.delete();
+	}
+
+	private void close() {
+		if (out == null)
+			return;
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		out = null;
+	}
+
+	private static void replace(File file, byte[] data) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(data);
+			out.getChannel().force(false);
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static long checksum(byte[] data, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		return crc.getValue();
+	}
+}
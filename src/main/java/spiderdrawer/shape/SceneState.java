@@ -0,0 +1,333 @@
+package spiderdrawer.shape;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import spiderdrawer.shape.SceneFormat.Input;
+import spiderdrawer.shape.SceneFormat.Output;
+import spiderdrawer.shape.SceneFormat.Table;
+import spiderdrawer.shape.containers.Container;
+import spiderdrawer.shape.containers.MultiContainer;
+import spiderdrawer.shape.containers.SingleContainer;
+import spiderdrawer.shape.interfaces.Shape;
+
+/*
+ * The state of the shapes being deleted and of the objects the deletion changes, kept from before it was made so
+ * that undoing it sets them back instead of working their relations out again.
+ *
+ * The shape and the objects it's related to are kept when it's added, with the members of the spiders among them, as
+ * removing it changes their links. Working out again the shapes it scheduled changes others, so until the batch ends
+ * the shape list keeps each shape before its relations first change. Each object is kept once, as it was before the
+ * first change: what each of its containers held, and its fields and links written as SceneFormat writes them.
+ * When the batch ends, the objects it left as they were are forgotten.
+ */
+public class SceneState {
+
+	private final static int ENTRY_BYTES = 48;
+	/* Rough sizes, in bytes, for shapeBytes() */
+	private final static int SHAPE_BYTES = 64;
+	private final static int CONTAINER_BYTES = 56;
+	private final static int CONTAINER_ENTRY_BYTES = 16;
+	private final static int SAMPLE_BYTES = 16;
+
+	private final ShapeList shapeList;
+	private final Table table = new Table();
+	private final IdentityHashMap<Object, Kept> kept = new IdentityHashMap<Object, Kept>();
+	private final ArrayList<Object> order = new ArrayList<Object>();
+	private final ArrayList<Shape> removedWith = new ArrayList<Shape>();
+	private final ArrayList<Freeform> strokes = new ArrayList<Freeform>();
+	private long bytes;
+
+	/*
+	 * An object as it was: its fields and links, and for each of its containers the objects it held and the
+	 * containers on their side.
+	 */
+	private static class Kept {
+
+		final byte[] fields;
+		final Object[][] held;
+		final Container<?, ?>[][] sides;
+
+		Kept(byte[] fields, Container<?, ?>[] containers) {
+			this.fields = fields;
+			held = new Object[containers.length][];
+			sides = new Container<?, ?>[containers.length][];
+			for (int i = 0; i < containers.length; i++) {
+				if (containers[i] instanceof SingleContainer) {
+					SingleContainer<?, ?> single = (SingleContainer<?, ?>) containers[i];
+					held[i] = (single.get() == null)? new Object[0] : new Object[] {single.get()};
+					sides[i] = (single.get() == null)? new Container<?, ?>[0] : new Container<?, ?>[] {single.getContainer()};
+				} else {
+					MultiContainer<?, ?> multi = (MultiContainer<?, ?>) containers[i];
+					held[i] = new Object[multi.size()];
+					sides[i] = new Container<?, ?>[multi.size()];
+					for (int j = 0; j < multi.size(); j++) {
+						held[i][j] = multi.get(j);
+						sides[i][j] = multi.getContainer(j);
+					}
+				}
+			}
+		}
+
+		long bytes() {
+			long bytes = fields.length;
+			for (int i = 0; i < held.length; i++)
+				bytes += (long) held[i].length * ENTRY_BYTES;
+			return bytes;
+		}
+	}
+
+	public SceneState(ShapeList shapeList) {
+		this.shapeList = shapeList;
+	}
+
+	/*
+	 * Keeps the state of a shape about to be removed, inside the batch that removes it, and of the objects around it.
+	 */
+	public void keep(Shape shape) {
+		if (shape instanceof Freeform) {
+			/* A stroke has no relations, and removing it only marks it removed. */
+			strokes.add((Freeform) shape);
+			return;
+		}
+		keepObject(shape);
+		List<Object> related = SceneFormat.related(shape);
+		for (int i = 0; i < related.size(); i++) {
+			keepObject(related.get(i));
+			if (related.get(i) instanceof Spider) {
+				List<Object> members = SceneFormat.related(related.get(i));
+				for (int j = 0; j < members.size(); j++)
+					keepObject(members.get(j));
+			}
+		}
+		if (shape instanceof Box && ((Box) shape).shading.get() != null)
+			removedWith.add(((Box) shape).shading.get());
+		shapeList.keepChanging(this);
+	}
+
+	/*
+	 * A point or line is kept with its spider, which has no shape list to tell when it changes.
+	 */
+	void keepObject(Object object) {
+		if (object == null || kept.containsKey(object))
+			return;
+		Output fields = new Output();
+		SceneFormat.writeFields(object, fields, table);
+		Kept state = new Kept(fields.toByteArray(), SceneFormat.containers(object));
+		kept.put(object, state);
+		order.add(object);
+		bytes += state.bytes();
+		if (object instanceof Point)
+			keepObject(((Point) object).spider.get());
+		else if (object instanceof Line)
+			keepObject(((Line) object).spider.get());
+	}
+
+	/*
+	 * Forgets the objects the batch left as they were, once it has ended, so that undoing it only sets back, and the
+	 * history only holds, what changed.
+	 */
+	void settle() {
+		Output now = new Output();
+		ArrayList<Object> changed = new ArrayList<Object>();
+		for (int i = 0; i < order.size(); i++) {
+			Object object = order.get(i);
+			Kept state = kept.get(object);
+			boolean same = !fieldsChanged(object, state, now);
+			Container<?, ?>[] containers = SceneFormat.containers(object);
+			for (int j = 0; j < containers.length && same; j++)
+				same = holds(containers[j], state.held[j], state.sides[j]);
+			if (same) {
+				kept.remove(object);
+				bytes -= state.bytes();
+			} else {
+				changed.add(object);
+			}
+		}
+		order.clear();
+		order.addAll(changed);
+	}
+
+	/*
+	 * Sets the objects that changed back as they were kept, adding back the shapes removed along with the deleted
+	 * ones, such as a box's shading. The deleted shapes are added back by the caller, first.
+	 * Both sides of a relation between objects kept are set back with them, and for an object that wasn't kept, its
+	 * side of a relation it gained or lost with one that was is set back here.
+	 * If the kept fields can't be read back, nothing is set back and an IllegalStateException is thrown.
+	 */
+	public void restore() {
+		ArrayList<Shape> restored = new ArrayList<Shape>();
+		IdentityHashMap<Object, byte[]> read = restoreFields();
+		for (int i = 0; i < order.size(); i++) {
+			Object object = order.get(i);
+			Kept state = kept.get(object);
+			boolean changed = read.containsKey(object);
+			Container<?, ?>[] containers = SceneFormat.containers(object);
+			for (int j = 0; j < containers.length; j++)
+				changed |= restore(object, containers[j], state.held[j], state.sides[j]);
+			if (changed && object instanceof Shape && !(object instanceof Label && ((Label) object).shapeList == null))
+				restored.add((Shape) object);
+		}
+		shapeList.addAll(removedWith);
+		for (int i = 0; i < strokes.size(); i++)
+			strokes.get(i).removed = false;
+		for (int i = 0; i < restored.size(); i++)
+			shapeList.update(restored.get(i));
+	}
+
+	/*
+	 * Sets back the fields that changed, before any relation is, and returns them as they were before.
+	 * If one can't be read, those already set back are put as they were and the restore is given up, leaving the
+	 * scene unchanged.
+	 */
+	private IdentityHashMap<Object, byte[]> restoreFields() {
+		IdentityHashMap<Object, byte[]> read = new IdentityHashMap<Object, byte[]>();
+		Output now = new Output();
+		for (int i = 0; i < order.size(); i++) {
+			Object object = order.get(i);
+			Kept state = kept.get(object);
+			if (!fieldsChanged(object, state, now))
+				continue;
+			read.put(object, now.toByteArray());
+			try {
+				SceneFormat.readFields(object, new Input(state.fields, 0, state.fields.length), table);
+			} catch (IOException e) {
+				IllegalStateException failed = new IllegalStateException("Could not restore the state of " + object, e);
+				for (int j = 0; j <= i; j++) {
+					byte[] before = read.get(order.get(j));
+					if (before == null)
+						continue;
+					try {
+						SceneFormat.readFields(order.get(j), new Input(before, 0, before.length), table);
+					} catch (IOException e2) {
+						failed.addSuppressed(e2);
+					}
+				}
+				throw failed;
+			}
+		}
+		return read;
+	}
+
+	/*
+	 * Sets a container back to what it held, if it changed, on its side and on the side of the objects not kept.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private boolean restore(Object object, Container<?, ?> container, Object[] held, Container<?, ?>[] sides) {
+		if (container instanceof SingleContainer) {
+			SingleContainer single = (SingleContainer) container;
+			Object other = (held.length == 0)? null : held[0];
+			if (holds(single, held, sides))
+				return false;
+			if (single.get() != null && single.get() != other && !kept.containsKey(single.get()))
+				drop(single.getContainer(), object);
+			single.restore(other, (other == null)? null : sides[0]);
+			if (other != null && !kept.containsKey(other) && !holds(sides[0], object))
+				add(sides[0], object, single);
+			return true;
+		}
+		MultiContainer multi = (MultiContainer) container;
+		/* Only what's between the ends the two lists share changed, which for a big container is usually little. */
+		int start = 0, end = 0;
+		while (start < multi.size() && start < held.length && multi.get(start) == held[start] && multi.getContainer(start) == sides[start])
+			start++;
+		if (start == multi.size() && start == held.length)
+			return false;
+		while (end < multi.size() - start && end < held.length - start && multi.get(multi.size() - 1 - end) == held[held.length - 1 - end]
+				&& multi.getContainer(multi.size() - 1 - end) == sides[held.length - 1 - end])
+			end++;
+		IdentityHashMap<Object, Boolean> was = new IdentityHashMap<Object, Boolean>();
+		for (int i = start; i < held.length - end; i++)
+			was.put(held[i], Boolean.TRUE);
+		IdentityHashMap<Object, Boolean> is = new IdentityHashMap<Object, Boolean>();
+		for (int i = start; i < multi.size() - end; i++) {
+			Object other = multi.get(i);
+			is.put(other, Boolean.TRUE);
+			if (other != null && !was.containsKey(other) && !kept.containsKey(other))
+				drop(multi.getContainer(i), object);
+		}
+		multi.restore(Arrays.asList(held), Arrays.asList(sides));
+		for (int i = start; i < held.length - end; i++) {
+			if (held[i] != null && !is.containsKey(held[i]) && !kept.containsKey(held[i]) && !holds(sides[i], object))
+				add(sides[i], object, multi);
+		}
+		return true;
+	}
+
+	/*
+	 * Roughly how much memory the states take.
+	 */
+	public long retainedBytes() {
+		return bytes + (long) table.objects.size() * ENTRY_BYTES;
+	}
+
+	/*
+	 * Roughly how much memory a shape keeps reachable: itself, its containers and what's in them, and the samples of
+	 * a freeform.
+	 */
+	public static long shapeBytes(Shape shape) {
+		long bytes = SHAPE_BYTES;
+		if (shape instanceof Freeform)
+			bytes += (long) ((Freeform) shape).xs.length*SAMPLE_BYTES;
+		Container<?, ?>[] containers = SceneFormat.containers(shape);
+		for (int i = 0; i < containers.length; i++) {
+			bytes += CONTAINER_BYTES;
+			if (containers[i] instanceof MultiContainer)
+				bytes += (long) ((MultiContainer<?, ?>) containers[i]).size()*CONTAINER_ENTRY_BYTES;
+		}
+		return bytes;
+	}
+
+	private boolean fieldsChanged(Object object, Kept state, Output now) {
+		now.reset();
+		SceneFormat.writeFields(object, now, table);
+		return !Arrays.equals(state.fields, now.toByteArray());
+	}
+
+	/*
+	 * Whether a container holds what it was kept holding, in the same order.
+	 */
+	private static boolean holds(Container<?, ?> container, Object[] held, Container<?, ?>[] sides) {
+		if (container instanceof SingleContainer) {
+			SingleContainer<?, ?> single = (SingleContainer<?, ?>) container;
+			if (held.length == 0)
+				return single.get() == null;
+			return single.get() == held[0] && single.getContainer() == sides[0];
+		}
+		MultiContainer<?, ?> multi = (MultiContainer<?, ?>) container;
+		if (multi.size() != held.length)
+			return false;
+		for (int i = 0; i < held.length; i++) {
+			if (multi.get(i) != held[i] || multi.getContainer(i) != sides[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean holds(Container<?, ?> container, Object object) {
+		if (container instanceof SingleContainer)
+			return ((SingleContainer<?, ?>) container).get() == object;
+		return container instanceof MultiContainer && ((MultiContainer<?, ?>) container).list().contains(object);
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static void drop(Container<?, ?> container, Object object) {
+		if (container instanceof SingleContainer) {
+			if (((SingleContainer) container).get() == object)
+				((SingleContainer) container).restore(null, null);
+		} else if (container instanceof MultiContainer) {
+			((MultiContainer) container).drop(object);
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static void add(Container<?, ?> container, Object object, Container<?, ?> side) {
+		if (container instanceof SingleContainer)
+			((SingleContainer) container).restore(object, side);
+		else if (container instanceof MultiContainer)
+			((MultiContainer) container).restore(object, side);
+	}
+}
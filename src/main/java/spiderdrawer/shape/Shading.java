@@ -4,37 +4,94 @@ import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
-import java.awt.geom.Area;
-import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
 import java.util.ArrayList;
+import java.util.List;
 
 import spiderdrawer.exception.EmptyContainerException;
+import spiderdrawer.shape.containers.Container;
 import spiderdrawer.shape.containers.MultiContainer;
 import spiderdrawer.shape.containers.SingleContainer;
 import spiderdrawer.shape.interfaces.Deletable;
 import spiderdrawer.shape.interfaces.Drawable;
-import spiderdrawer.shape.interfaces.Shape;
+import spiderdrawer.shape.interfaces.Related;
+import static spiderdrawer.Parameters.ZONE_TEST_AREA;
 
 
-public class Shading implements Deletable, Drawable {
+public class Shading implements Deletable, Drawable, Related {
 	
 	/*
 	 *  included\excluded
 	 */
-	private ArrayList<Shape> shapeList;
+	ShapeList shapeList;
 	SingleContainer<Box, Shading> box;
 	MultiContainer<Circle, Shading> included;
 	Freeform freeform;
+	/* The filled zone, built again on the next draw once its box or circles have changed. */
+	private Path2D fill;
+	private boolean fillStale = true;
 	
 	public Shading() {
 	}
 	
-	private void createContainers() {
-		box = new SingleContainer<Box, Shading>(this);
-		included = new MultiContainer<Circle, Shading>(this);
+	void createContainers() {
+		box = new SingleContainer<Box, Shading>(this) {
+			@Override
+			public void set(Box b, Container<Shading, Box> c) {
+				super.set(b, c);
+				fillChanged();
+			}
+			
+			@Override
+			public void restore(Box b, Container<Shading, Box> c) {
+				super.restore(b, c);
+				fillChanged();
+			}
+		};
+		included = new MultiContainer<Circle, Shading>(this) {
+			@Override
+			public void add(Circle circle, Container<Shading, Circle> c) {
+				super.add(circle, c);
+				fillChanged();
+			}
+			
+			@Override
+			public void remove(Circle circle) {
+				super.remove(circle);
+				fillChanged();
+			}
+			
+			@Override
+			public void restore(Circle circle, Container<Shading, Circle> c) {
+				super.restore(circle, c);
+				fillChanged();
+			}
+			
+			@Override
+			public void drop(Circle circle) {
+				super.drop(circle);
+				fillChanged();
+			}
+			
+			@Override
+			public void clear() {
+				super.clear();
+				fillChanged();
+			}
+			
+			@Override
+			public void restore(List<Circle> circles, List<Container<Shading, Circle>> cs) {
+				super.restore(circles, cs);
+				fillChanged();
+			}
+		};
+	}
+	
+	void fillChanged() {
+		fillStale = true;
 	}
 	
-	public static Shading create(Freeform freeform, ArrayList<Shape> shapeList) {
+	public static Shading create(Freeform freeform, ShapeList shapeList) {
 		Shading shading = new Shading();
 		shading.createContainers();
 		shading.freeform = freeform;
@@ -47,7 +104,7 @@ public class Shading implements Deletable, Drawable {
 		if (included.size() == 0) {
 			return box.get() == null || box.get().shading.get() != this;
 		}
-		Shading[] shadings = Arrays.shadingArray(shapeList);
+		Shading[] shadings = shapeList.shadingArray();
 		for (int i = 0; i < shadings.length; i++) {
 			if (shadings[i].included.size() == included.size() && included.containsAll(shadings[i].included))
 				return true;
@@ -58,7 +115,7 @@ public class Shading implements Deletable, Drawable {
 	
 	
 	public void compute() {
-		Circle[] circles = Arrays.circleArray(shapeList);
+		Circle[] circles = shapeList.circlesNear(freeform, 0);
 		computeIncluded(circles);
 		if (included.isEmpty())
 			computeBox();
@@ -66,12 +123,12 @@ public class Shading implements Deletable, Drawable {
 	
 	public void computeBox() {
 		/* Check if it overlaped with any circles */
-		Circle[] circles = Arrays.circleArray(shapeList);
+		Circle[] circles = shapeList.circlesNear(freeform, 0);
 		for (int i = 0; i < circles.length; i++)
 			if (circles[i].intersects(freeform))
 				return;
 		
-		Box[] boxes = Arrays.boxArray(shapeList);
+		Box[] boxes = shapeList.boxesNear(freeform, 0);
 		for (int i = 0; i < boxes.length; i++) {
 			if (boxes[i].shading.get() == null && boxes[i].contains(freeform) && boxes[i].innerBoxes.size() == 0)
 				box.set(boxes[i], boxes[i].shading);
@@ -97,13 +154,15 @@ public class Shading implements Deletable, Drawable {
 		return result + "])";
 	}
 	
-	protected ArrayList<Circle> getExcluded() {
-		Box box;
+	private Box excludedBox() {
 		if (included.size() > 0 && included.get(0).boxes.size() == 1)
-			box = included.get(0).boxes.get(0);
-		else if (this.box.get() != null)
-			box = this.box.get();
-		else
+			return included.get(0).boxes.get(0);
+		return this.box.get();
+	}
+	
+	protected ArrayList<Circle> getExcluded() {
+		Box box = excludedBox();
+		if (box == null)
 			return null;
 		@SuppressWarnings("unchecked")
 		ArrayList<Circle> excluded = (ArrayList<Circle>) box.circles.list().clone();
@@ -165,32 +224,47 @@ public class Shading implements Deletable, Drawable {
 	@Override
 	public void draw(Graphics2D g2) {
 		if (isValid()) {
-			g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.2f));
-	    	g2.setColor(Color.BLUE);
-			Box box;
-			if (this.box.get() != null) {
-				box = this.box.get();
-			} else {
-				box = included.get(0).boxes.get(0);
-			}
-			Area area = new Area(new Rectangle(box.topLeft.x, box.topLeft.y, box.width, box.height));
-			for (int i = 0; i < included.size(); i++) {
-				Circle circle = included.get(i);
-				area.intersect(new Area(new Ellipse2D.Float(circle.center.x-circle.radius, circle.center.y-circle.radius, circle.radius*2, circle.radius*2)));
-			}
-			ArrayList<Circle> excluded = getExcluded();
-			if (excluded != null) {
-				for (int i = 0; i < excluded.size(); i++) {
-					Circle circle = excluded.get(i);
-					area.subtract(new Area(new Ellipse2D.Float(circle.center.x-circle.radius, circle.center.y-circle.radius, circle.radius*2, circle.radius*2)));
-				}
+			if (fillStale)
+				buildFill();
+			if (fill != null) {
+				g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.2f));
+		    	g2.setColor(Color.BLUE);
+				g2.fill(fill);
+			    g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1));
+			    g2.setColor(Color.BLACK);
 			}
-			g2.fill(area);
-		    g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1));
-		    g2.setColor(Color.BLACK);
 		}
 	}
+	
+	private void buildFill() {
+		Box box;
+		if (this.box.get() != null) {
+			box = this.box.get();
+		} else {
+			box = included.get(0).boxes.get(0);
+		}
+		Rectangle rect = new Rectangle(box.topLeft.x, box.topLeft.y, box.width, box.height);
+		ArrayList<Circle> excluded = getExcluded();
+		/* Only build the Area when there is something to fill. */
+		if (ZONE_TEST_AREA || Zones.exists(rect, included.list(), excluded))
+			fill = new Path2D.Float(Zones.area(rect, included.list(), excluded));
+		else
+			fill = null;
+		fillStale = false;
+	}
+
+	@Override
+	public void relationsChanging() {
+		if (shapeList != null)
+			shapeList.relationsChanging(this);
+	}
 
+	@Override
+	public void relationsChanged() {
+		if (shapeList != null)
+			shapeList.relationsChanged(this);
+	}
+	
 	@Override
 	public boolean isValid() {
 		return (included.size() > 0 && included.get(0).boxes.size() == 1) || (box.get() != null);
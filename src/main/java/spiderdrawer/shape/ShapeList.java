@@ -0,0 +1,309 @@
+package spiderdrawer.shape;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+
+import spiderdrawer.shape.interfaces.Movable;
+import spiderdrawer.shape.interfaces.Shape;
+
+/*
+ * The scene's shape list. Every change goes through the methods below, so that what it owns stays in step with it:
+ * the lists per type, the spatial index, the clusters of strokes and the record of what changed.
+ * Recomputes triggered by another shape go through schedule(), so that within a batch each shape is settled once.
+ */
+public class ShapeList extends ArrayList<Shape> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ShapeTypes types = new ShapeTypes();
+	private final SpatialIndex index = new SpatialIndex();
+	private final StrokeClusters strokeClusters = new StrokeClusters();
+	private final SceneChanges changes = new SceneChanges();
+	private final RecomputeScheduler scheduler = new RecomputeScheduler(this);
+	private final ThreadConfinement confinement = new ThreadConfinement();
+	private SceneState keeping;
+
+	public ShapeList() {
+		super();
+	}
+
+	public Box[] boxArray() {
+		return types.boxArray();
+	}
+
+	public Circle[] circleArray() {
+		return types.circleArray();
+	}
+
+	public Connective[] connectiveArray() {
+		return types.connectiveArray();
+	}
+
+	public Freeform[] freeformArray() {
+		return types.freeformArray();
+	}
+
+	public Label[] labelArray() {
+		return types.labelArray();
+	}
+
+	public Line[] lineArray() {
+		return types.lineArray();
+	}
+
+	public Point[] pointArray() {
+		return types.pointArray();
+	}
+
+	public Shading[] shadingArray() {
+		return types.shadingArray();
+	}
+
+	public void beginBatch() {
+		scheduler.begin();
+	}
+
+	public void endBatch() {
+		try {
+			scheduler.end();
+		} finally {
+			if (!scheduler.inBatch() && keeping != null) {
+				keeping.settle();
+				keeping = null;
+			}
+		}
+	}
+
+	public void schedule(Movable shape, boolean moving) {
+		scheduler.schedule(shape, moving);
+	}
+
+	boolean isIndexed(Shape shape) {
+		return index.contains(shape);
+	}
+
+	public void confineToEventThread() {
+		confinement.confine();
+	}
+
+	/*
+	 * Called by a shape whose bounds changed. The boxes a moved circle is in are told their zones changed, and the
+	 * shadings drawn from a moved box or circle that their fill did.
+	 */
+	public void update(Shape shape) {
+		confinement.check();
+		index.update(shape);
+		changes.moved(shape);
+		if (shape instanceof Circle)
+			((Circle) shape).zonesChanged();
+		else if (shape instanceof Box)
+			((Box) shape).fillsChanged();
+	}
+
+	/*
+	 * What changed since the last call, for the journal.
+	 */
+	SceneJournal.Changes takeChanges() {
+		return changes.takeJournaled();
+	}
+
+	public int version() {
+		return changes.version();
+	}
+
+	public Shape[] takeMoved() {
+		return changes.takeMoved();
+	}
+
+	public Shape[] takeRelationsChanged() {
+		return changes.takeRelationsChanged();
+	}
+
+	/*
+	 * Until the batch ends, shapes are kept in the state, as they were, before their relations first change.
+	 * Then the state forgets those that didn't end up changed.
+	 */
+	void keepChanging(SceneState state) {
+		if (scheduler.inBatch())
+			keeping = state;
+	}
+
+	void relationsChanging(Shape shape) {
+		if (keeping != null)
+			keeping.keepObject(shape);
+	}
+
+	void relationsChanged(Shape shape) {
+		changes.relationsChanged(shape);
+	}
+
+	public Box[] boxesNear(Shape shape, int dist) {
+		ArrayList<Box> near = index.query(shape, dist, Box.class);
+		return near.toArray(new Box[near.size()]);
+	}
+
+	public Circle[] circlesNear(Shape shape, int dist) {
+		ArrayList<Circle> near = index.query(shape, dist, Circle.class);
+		return near.toArray(new Circle[near.size()]);
+	}
+
+	public Connective[] connectivesNear(Shape shape, int dist) {
+		ArrayList<Connective> near = index.query(shape, dist, Connective.class);
+		return near.toArray(new Connective[near.size()]);
+	}
+
+	public Label[] labelsNear(Shape shape, int dist) {
+		ArrayList<Label> near = index.query(shape, dist, Label.class);
+		return near.toArray(new Label[near.size()]);
+	}
+
+	public Line[] linesNear(Shape shape, int dist) {
+		ArrayList<Line> near = index.query(shape, dist, Line.class);
+		return near.toArray(new Line[near.size()]);
+	}
+
+	public Point[] pointsNear(Shape shape, int dist) {
+		ArrayList<Point> near = index.query(shape, dist, Point.class);
+		return near.toArray(new Point[near.size()]);
+	}
+
+	public void strokeFinished(Freeform freeform) {
+		strokeClusters.update(freeform);
+	}
+
+	public ArrayList<Freeform> overlappingStrokes(Freeform freeform) {
+		return strokeClusters.overlapping(freeform);
+	}
+
+	public Freeform[] strokeCluster(Freeform freeform) {
+		return strokeClusters.cluster(freeform);
+	}
+
+	private void register(Shape shape) {
+		confinement.check();
+		types.add(shape);
+		if (SpatialIndex.isIndexed(shape))
+			index.insert(shape);
+		else if (shape instanceof Freeform)
+			strokeClusters.add((Freeform) shape);
+	}
+
+	private void unregister(Object shape) {
+		confinement.check();
+		changes.removed((Shape) shape);
+		if (!types.remove(shape))
+			return;
+		if (SpatialIndex.isIndexed((Shape) shape))
+			index.remove((Shape) shape);
+		else if (shape instanceof Freeform)
+			strokeClusters.remove((Freeform) shape);
+	}
+
+	/*
+	 * Rebuilds what the list owns from scratch, used after the rare operations that don't append or remove.
+	 */
+	private void reindex() {
+		confinement.check();
+		types.clear();
+		index.clear();
+		strokeClusters.clear();
+		changes.reordered();
+		for (int i = 0; i < size(); i++)
+			register(get(i));
+	}
+
+	@Override
+	public boolean add(Shape shape) {
+		super.add(shape);
+		register(shape);
+		changes.added(shape);
+		return true;
+	}
+
+	@Override
+	public void add(int index, Shape shape) {
+		super.add(index, shape);
+		reindex();
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Shape> c) {
+		boolean changed = false;
+		for (Shape shape : c)
+			changed |= add(shape);
+		return changed;
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends Shape> c) {
+		boolean changed = super.addAll(index, c);
+		reindex();
+		return changed;
+	}
+
+	@Override
+	public Shape remove(int index) {
+		Shape shape = super.remove(index);
+		unregister(shape);
+		return shape;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!super.remove(o))
+			return false;
+		unregister(o);
+		return true;
+	}
+
+	/*
+	 * Removes the shapes in one pass over the list and unregisters just them, as undo and redo remove whole
+	 * deletions at once.
+	 */
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		IdentityHashMap<Object, Boolean> removing = new IdentityHashMap<Object, Boolean>();
+		for (Object o : c)
+			removing.put(o, Boolean.TRUE);
+		int kept = 0;
+		for (int i = 0; i < size(); i++) {
+			Shape shape = get(i);
+			if (removing.containsKey(shape))
+				unregister(shape);
+			else
+				super.set(kept++, shape);
+		}
+		if (kept == size())
+			return false;
+		super.removeRange(kept, size());
+		return true;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		boolean changed = super.retainAll(c);
+		if (changed)
+			reindex();
+		return changed;
+	}
+
+	@Override
+	public Shape set(int index, Shape shape) {
+		Shape old = super.set(index, shape);
+		reindex();
+		return old;
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		super.removeRange(fromIndex, toIndex);
+		reindex();
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		reindex();
+	}
+}
@@ -0,0 +1,165 @@
+package spiderdrawer.shape;
+
+import java.util.ArrayList;
+
+import spiderdrawer.shape.interfaces.Shape;
+
+/*
+ * The scene's shapes kept in a list per type, so that type lookups during recompute don't have to scan the whole list.
+ * The arrays handed out are shared until the next change of that type, so they must not be modified.
+ */
+class ShapeTypes {
+
+	private final ArrayList<Box> boxes = new ArrayList<Box>();
+	private final ArrayList<Circle> circles = new ArrayList<Circle>();
+	private final ArrayList<Connective> connectives = new ArrayList<Connective>();
+	private final ArrayList<Freeform> freeforms = new ArrayList<Freeform>();
+	private final ArrayList<Label> labels = new ArrayList<Label>();
+	private final ArrayList<Line> lines = new ArrayList<Line>();
+	private final ArrayList<Point> points = new ArrayList<Point>();
+	private final ArrayList<Shading> shadings = new ArrayList<Shading>();
+
+	private Box[] boxArray;
+	private Circle[] circleArray;
+	private Connective[] connectiveArray;
+	private Freeform[] freeformArray;
+	private Label[] labelArray;
+	private Line[] lineArray;
+	private Point[] pointArray;
+	private Shading[] shadingArray;
+
+	Box[] boxArray() {
+		if (boxArray == null)
+			boxArray = boxes.toArray(new Box[boxes.size()]);
+		return boxArray;
+	}
+
+	Circle[] circleArray() {
+		if (circleArray == null)
+			circleArray = circles.toArray(new Circle[circles.size()]);
+		return circleArray;
+	}
+
+	Connective[] connectiveArray() {
+		if (connectiveArray == null)
+			connectiveArray = connectives.toArray(new Connective[connectives.size()]);
+		return connectiveArray;
+	}
+
+	Freeform[] freeformArray() {
+		if (freeformArray == null)
+			freeformArray = freeforms.toArray(new Freeform[freeforms.size()]);
+		return freeformArray;
+	}
+
+	Label[] labelArray() {
+		if (labelArray == null)
+			labelArray = labels.toArray(new Label[labels.size()]);
+		return labelArray;
+	}
+
+	Line[] lineArray() {
+		if (lineArray == null)
+			lineArray = lines.toArray(new Line[lines.size()]);
+		return lineArray;
+	}
+
+	Point[] pointArray() {
+		if (pointArray == null)
+			pointArray = points.toArray(new Point[points.size()]);
+		return pointArray;
+	}
+
+	Shading[] shadingArray() {
+		if (shadingArray == null)
+			shadingArray = shadings.toArray(new Shading[shadings.size()]);
+		return shadingArray;
+	}
+
+	void add(Shape shape) {
+		if (shape instanceof Box) {
+			boxes.add((Box) shape);
+			boxArray = null;
+		} else if (shape instanceof Circle) {
+			circles.add((Circle) shape);
+			circleArray = null;
+		} else if (shape instanceof Connective) {
+			connectives.add((Connective) shape);
+			connectiveArray = null;
+		} else if (shape instanceof Freeform) {
+			freeforms.add((Freeform) shape);
+			freeformArray = null;
+		} else if (shape instanceof Label) {
+			labels.add((Label) shape);
+			labelArray = null;
+		} else if (shape instanceof Line) {
+			lines.add((Line) shape);
+			lineArray = null;
+		} else if (shape instanceof Point) {
+			points.add((Point) shape);
+			pointArray = null;
+		} else if (shape instanceof Shading) {
+			shadings.add((Shading) shape);
+			shadingArray = null;
+		}
+	}
+
+	/*
+	 * Removes the shape once from the list of its type, and tells whether none is left there.
+	 */
+	boolean remove(Object shape) {
+		if (shape instanceof Box) {
+			if (boxes.remove(shape))
+				boxArray = null;
+			return !boxes.contains(shape);
+		} else if (shape instanceof Circle) {
+			if (circles.remove(shape))
+				circleArray = null;
+			return !circles.contains(shape);
+		} else if (shape instanceof Connective) {
+			if (connectives.remove(shape))
+				connectiveArray = null;
+			return !connectives.contains(shape);
+		} else if (shape instanceof Freeform) {
+			if (freeforms.remove(shape))
+				freeformArray = null;
+			return !freeforms.contains(shape);
+		} else if (shape instanceof Label) {
+			if (labels.remove(shape))
+				labelArray = null;
+			return !labels.contains(shape);
+		} else if (shape instanceof Line) {
+			if (lines.remove(shape))
+				lineArray = null;
+			return !lines.contains(shape);
+		} else if (shape instanceof Point) {
+			if (points.remove(shape))
+				pointArray = null;
+			return !points.contains(shape);
+		} else if (shape instanceof Shading) {
+			if (shadings.remove(shape))
+				shadingArray = null;
+			return !shadings.contains(shape);
+		}
+		return false;
+	}
+
+	void clear() {
+		boxes.clear();
+		circles.clear();
+		connectives.clear();
+		freeforms.clear();
+		labels.clear();
+		lines.clear();
+		points.clear();
+		shadings.clear();
+		boxArray = null;
+		circleArray = null;
+		connectiveArray = null;
+		freeformArray = null;
+		labelArray = null;
+		lineArray = null;
+		pointArray = null;
+		shadingArray = null;
+	}
+}
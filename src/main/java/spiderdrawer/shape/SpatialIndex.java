@@ -0,0 +1,210 @@
+package spiderdrawer.shape;
+
+import static spiderdrawer.Parameters.LABEL_MIN_WIDTH;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import spiderdrawer.shape.interfaces.Shape;
+
+/*
+ * Uniform grid over the bounding boxes of the boxes, circles, connectives, labels, lines and points in a ShapeList.
+ * Queries return every shape whose bounds touch the queried area, in the order the shapes were added,
+ * so callers see candidates in the same order as in the full type arrays.
+ */
+class SpatialIndex {
+
+	private static final int CELL_SIZE = 64;
+
+	private static class Entry {
+		Shape shape;
+		int seq;
+		int minCol, minRow, maxCol, maxRow;
+		int queryStamp;
+	}
+
+	private static final Comparator<Entry> SEQ_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			return (e1.seq < e2.seq)? -1 : ((e1.seq == e2.seq)? 0 : 1);
+		}
+	};
+
+	private final HashMap<Long, ArrayList<Entry>> cells = new HashMap<Long, ArrayList<Entry>>();
+	private final IdentityHashMap<Shape, Entry> entries = new IdentityHashMap<Shape, Entry>();
+	private final int[] bounds = new int[4];
+	private int nextSeq = 0;
+	private int queryStamp = 0;
+
+	static boolean isIndexed(Shape shape) {
+		return shape instanceof Box || shape instanceof Circle || shape instanceof Connective
+				|| shape instanceof Label || shape instanceof Line || shape instanceof Point;
+	}
+
+	/*
+	 * Writes minX, minY, maxX, maxY of the shape into result, padded by a pixel so touching shapes are found.
+	 */
+	static boolean bounds(Shape shape, int[] result) {
+		int minX, minY, maxX, maxY;
+		if (shape instanceof Box) {
+			Box box = (Box) shape;
+			minX = Math.min(box.topLeft.x, box.topLeft.x + box.width);
+			maxX = Math.max(box.topLeft.x, box.topLeft.x + box.width);
+			minY = Math.min(box.topLeft.y, box.topLeft.y + box.height);
+			maxY = Math.max(box.topLeft.y, box.topLeft.y + box.height);
+		} else if (shape instanceof Circle) {
+			Circle circle = (Circle) shape;
+			minX = circle.center.x - circle.radius;
+			maxX = circle.center.x + circle.radius;
+			minY = circle.center.y - circle.radius;
+			maxY = circle.center.y + circle.radius;
+		} else if (shape instanceof Connective) {
+			Connective connective = (Connective) shape;
+			minX = connective.center.x - connective.width/2;
+			maxX = connective.center.x + connective.width/2;
+			minY = connective.center.y - connective.height/2;
+			maxY = connective.center.y + connective.height/2;
+		} else if (shape instanceof Label) {
+			Label label = (Label) shape;
+			int width = Math.max(label.width, LABEL_MIN_WIDTH);
+			minX = label.center.x - width/2;
+			maxX = label.center.x + width/2;
+			minY = label.center.y - label.height/2;
+			maxY = label.center.y + label.height/2;
+		} else if (shape instanceof Line) {
+			Line line = (Line) shape;
+			minX = Math.min(line.start.x, line.end.x);
+			maxX = Math.max(line.start.x, line.end.x);
+			minY = Math.min(line.start.y, line.end.y);
+			maxY = Math.max(line.start.y, line.end.y);
+		} else if (shape instanceof Point) {
+			Point point = (Point) shape;
+			minX = maxX = point.x;
+			minY = maxY = point.y;
+		} else if (shape instanceof Freeform) {
+			Freeform freeform = (Freeform) shape;
+			minX = freeform.minX();
+			maxX = freeform.maxX();
+			minY = freeform.minY();
+			maxY = freeform.maxY();
+		} else {
+			return false;
+		}
+		result[0] = minX - 1;
+		result[1] = minY - 1;
+		result[2] = maxX + 1;
+		result[3] = maxY + 1;
+		return true;
+	}
+
+	private static int cell(int coordinate) {
+		return (coordinate >= 0)? coordinate/CELL_SIZE : -((-coordinate - 1)/CELL_SIZE) - 1;
+	}
+
+	private static long key(int col, int row) {
+		return ((long) col << 32) | (row & 0xffffffffL);
+	}
+
+	void insert(Shape shape) {
+		if (entries.containsKey(shape) || !bounds(shape, bounds))
+			return;
+		Entry entry = new Entry();
+		entry.shape = shape;
+		entry.seq = nextSeq++;
+		entries.put(shape, entry);
+		place(entry);
+	}
+
+	boolean contains(Shape shape) {
+		return entries.containsKey(shape);
+	}
+
+	void remove(Shape shape) {
+		Entry entry = entries.remove(shape);
+		if (entry != null)
+			displace(entry);
+	}
+
+	void update(Shape shape) {
+		Entry entry = entries.get(shape);
+		if (entry == null || !bounds(shape, bounds))
+			return;
+		if (entry.minCol == cell(bounds[0]) && entry.minRow == cell(bounds[1]) && entry.maxCol == cell(bounds[2]) && entry.maxRow == cell(bounds[3]))
+			return;
+		displace(entry);
+		place(entry);
+	}
+
+	void clear() {
+		cells.clear();
+		entries.clear();
+	}
+
+	private void place(Entry entry) {
+		entry.minCol = cell(bounds[0]);
+		entry.minRow = cell(bounds[1]);
+		entry.maxCol = cell(bounds[2]);
+		entry.maxRow = cell(bounds[3]);
+		for (int col = entry.minCol; col <= entry.maxCol; col++) {
+			for (int row = entry.minRow; row <= entry.maxRow; row++) {
+				Long key = key(col, row);
+				ArrayList<Entry> cell = cells.get(key);
+				if (cell == null) {
+					cell = new ArrayList<Entry>(4);
+					cells.put(key, cell);
+				}
+				cell.add(entry);
+			}
+		}
+	}
+
+	private void displace(Entry entry) {
+		for (int col = entry.minCol; col <= entry.maxCol; col++) {
+			for (int row = entry.minRow; row <= entry.maxRow; row++) {
+				Long key = key(col, row);
+				ArrayList<Entry> cell = cells.get(key);
+				if (cell != null) {
+					cell.remove(entry);
+					if (cell.isEmpty())
+						cells.remove(key);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Shapes of the given type whose bounds touch the bounds of near, expanded by dist.
+	 */
+	<T extends Shape> ArrayList<T> query(Shape near, int dist, Class<T> type) {
+		ArrayList<T> result = new ArrayList<T>();
+		if (!bounds(near, bounds))
+			return result;
+		int minCol = cell(bounds[0] - dist);
+		int minRow = cell(bounds[1] - dist);
+		int maxCol = cell(bounds[2] + dist);
+		int maxRow = cell(bounds[3] + dist);
+		int stamp = ++queryStamp;
+		ArrayList<Entry> found = new ArrayList<Entry>();
+		for (int col = minCol; col <= maxCol; col++) {
+			for (int row = minRow; row <= maxRow; row++) {
+				ArrayList<Entry> cell = cells.get(key(col, row));
+				if (cell == null)
+					continue;
+				for (int i = 0; i < cell.size(); i++) {
+					Entry entry = cell.get(i);
+					if (entry.queryStamp != stamp && type.isInstance(entry.shape)) {
+						entry.queryStamp = stamp;
+						found.add(entry);
+					}
+				}
+			}
+		}
+		Collections.sort(found, SEQ_ORDER);
+		for (int i = 0; i < found.size(); i++)
+			result.add(type.cast(found.get(i).shape));
+		return result;
+	}
+}
@@ -70,12 +70,13 @@ public class Spider implements Movable, Drawable {
 	}
 	
 	private void setLabel(Point point, char letter, int number) {
-		label = new Label(letter, number, point.x - 15, point.y - 25);
-		point.label = label;
+		Label label = new Label(letter, number, point.x - 15, point.y - 25);
+		point.setSpiderLabel(label);
+		this.label = label;
 	}
 	
 	private void removeLabel(Point point) {
-		point.label = null;
+		point.setSpiderLabel(null);
 		label = null;
 		labelledPoint = null;
 	}
@@ -134,10 +135,14 @@ public class Spider implements Movable, Drawable {
 	@Override
 	public void recompute(boolean moving) {
 		if (isSinglePoint()) {
-			points.get(0).recompute(moving);
+			Point point = points.get(0);
+			if (point.shapeList != null)
+				point.shapeList.schedule(point, moving);
 		} else {
 			for (int i = 0; i < lines.size(); i++) {
-				lines.get(i).recompute(moving);
+				Line line = lines.get(i);
+				if (line.shapeList != null)
+					line.shapeList.schedule(line, moving);
 			}
 		}
 	}
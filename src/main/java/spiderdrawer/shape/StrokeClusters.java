@@ -0,0 +1,277 @@
+package spiderdrawer.shape;
+
+import static spiderdrawer.Parameters.FREEFORM_OVERLAP_DIST;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/*
+ * Groups the freeforms of a ShapeList into clusters of strokes within FREEFORM_OVERLAP_DIST of each other,
+ * directly or through other strokes.
+ * A stroke's overlaps are found once, when it is added or finished, by testing its segments only against the
+ * segments of other strokes in nearby cells of a uniform grid, after a bounding box check per stroke.
+ * Clusters are kept in a union-find. Removing a stroke can split its cluster, so the union-find is rebuilt
+ * from the overlaps on the next query after a removal.
+ */
+class StrokeClusters {
+
+	private static final int CELL_SIZE = 32;
+
+	private static class Stroke {
+		Freeform freeform;
+		int seq;
+		Stroke parent = this;
+		int rank;
+		ArrayList<Stroke> members;
+		final ArrayList<Stroke> overlapping = new ArrayList<Stroke>();
+		final ArrayList<Long> cellKeys = new ArrayList<Long>();
+		int stamp;
+	}
+
+	/*
+	 * The segments in a cell, as the stroke and the index of the segment's first point.
+	 */
+	private static class Cell {
+		Stroke[] strokes = new Stroke[4];
+		int[] segments = new int[4];
+		int size;
+
+		void add(Stroke stroke, int segment) {
+			if (size == strokes.length) {
+				strokes = java.util.Arrays.copyOf(strokes, size*2);
+				segments = java.util.Arrays.copyOf(segments, size*2);
+			}
+			strokes[size] = stroke;
+			segments[size] = segment;
+			size++;
+		}
+
+		void removeAll(Stroke stroke) {
+			int kept = 0;
+			for (int i = 0; i < size; i++) {
+				if (strokes[i] != stroke) {
+					strokes[kept] = strokes[i];
+					segments[kept] = segments[i];
+					kept++;
+				}
+			}
+			for (int i = kept; i < size; i++)
+				strokes[i] = null;
+			size = kept;
+		}
+	}
+
+	private static final Comparator<Stroke> SEQ_ORDER = new Comparator<Stroke>() {
+		@Override
+		public int compare(Stroke s1, Stroke s2) {
+			return (s1.seq < s2.seq)? -1 : ((s1.seq == s2.seq)? 0 : 1);
+		}
+	};
+
+	private final HashMap<Long, Cell> cells = new HashMap<Long, Cell>();
+	private final IdentityHashMap<Freeform, Stroke> strokes = new IdentityHashMap<Freeform, Stroke>();
+	private boolean stale = false;
+	private int nextSeq = 0;
+	private int stamp = 0;
+
+	private static int cell(int coordinate) {
+		return (coordinate >= 0)? coordinate/CELL_SIZE : -((-coordinate - 1)/CELL_SIZE) - 1;
+	}
+
+	private static long key(int col, int row) {
+		return ((long) col << 32) | (row & 0xffffffffL);
+	}
+
+	void add(Freeform freeform) {
+		if (strokes.containsKey(freeform))
+			return;
+		Stroke stroke = new Stroke();
+		stroke.freeform = freeform;
+		stroke.seq = nextSeq++;
+		stroke.members = new ArrayList<Stroke>();
+		stroke.members.add(stroke);
+		strokes.put(freeform, stroke);
+		place(stroke);
+	}
+
+	void remove(Freeform freeform) {
+		Stroke stroke = strokes.remove(freeform);
+		if (stroke == null)
+			return;
+		displace(stroke);
+		stale = true;
+	}
+
+	/*
+	 * Finds the overlaps of a stroke again after points were added to it.
+	 */
+	void update(Freeform freeform) {
+		Stroke stroke = strokes.get(freeform);
+		if (stroke == null)
+			return;
+		displace(stroke);
+		if (stroke.parent != stroke || stroke.members.size() > 1)
+			stale = true;
+		place(stroke);
+	}
+
+	void clear() {
+		cells.clear();
+		strokes.clear();
+		stale = false;
+	}
+
+	/*
+	 * The strokes that overlap the freeform, in the order they were added.
+	 */
+	ArrayList<Freeform> overlapping(Freeform freeform) {
+		ArrayList<Freeform> result = new ArrayList<Freeform>();
+		Stroke stroke = strokes.get(freeform);
+		if (stroke == null)
+			return result;
+		ArrayList<Stroke> overlapping = new ArrayList<Stroke>(stroke.overlapping);
+		Collections.sort(overlapping, SEQ_ORDER);
+		for (int i = 0; i < overlapping.size(); i++)
+			result.add(overlapping.get(i).freeform);
+		return result;
+	}
+
+	/*
+	 * The freeform and every stroke in its cluster, in the order they were added.
+	 */
+	Freeform[] cluster(Freeform freeform) {
+		Stroke stroke = strokes.get(freeform);
+		if (stroke == null)
+			return new Freeform[] {freeform};
+		if (stale)
+			rebuild();
+		ArrayList<Stroke> members = new ArrayList<Stroke>(find(stroke).members);
+		Collections.sort(members, SEQ_ORDER);
+		Freeform[] result = new Freeform[members.size()];
+		for (int i = 0; i < members.size(); i++)
+			result[i] = members.get(i).freeform;
+		return result;
+	}
+
+	private Stroke find(Stroke stroke) {
+		Stroke root = stroke;
+		while (root.parent != root)
+			root = root.parent;
+		while (stroke.parent != root) {
+			Stroke next = stroke.parent;
+			stroke.parent = root;
+			stroke = next;
+		}
+		return root;
+	}
+
+	private void union(Stroke s1, Stroke s2) {
+		Stroke root1 = find(s1);
+		Stroke root2 = find(s2);
+		if (root1 == root2)
+			return;
+		if (root1.rank < root2.rank) {
+			Stroke swap = root1;
+			root1 = root2;
+			root2 = swap;
+		}
+		root2.parent = root1;
+		if (root1.rank == root2.rank)
+			root1.rank++;
+		root1.members.addAll(root2.members);
+		root2.members = null;
+	}
+
+	private void rebuild() {
+		ArrayList<Stroke> all = new ArrayList<Stroke>(strokes.values());
+		for (int i = 0; i < all.size(); i++) {
+			Stroke stroke = all.get(i);
+			stroke.parent = stroke;
+			stroke.rank = 0;
+			stroke.members = new ArrayList<Stroke>();
+			stroke.members.add(stroke);
+		}
+		for (int i = 0; i < all.size(); i++) {
+			Stroke stroke = all.get(i);
+			for (int j = 0; j < stroke.overlapping.size(); j++)
+				union(stroke, stroke.overlapping.get(j));
+		}
+		stale = false;
+	}
+
+	/*
+	 * Finds the strokes this one overlaps, joins their clusters and puts its segments in the grid.
+	 */
+	private void place(Stroke stroke) {
+		Freeform freeform = stroke.freeform;
+		stamp++;
+		stroke.stamp = stamp;
+		for (int i = 0; i < freeform.size - 1; i++) {
+			int minX = Math.min(freeform.xs[i], freeform.xs[i+1]);
+			int maxX = Math.max(freeform.xs[i], freeform.xs[i+1]);
+			int minY = Math.min(freeform.ys[i], freeform.ys[i+1]);
+			int maxY = Math.max(freeform.ys[i], freeform.ys[i+1]);
+			for (int col = cell(minX - FREEFORM_OVERLAP_DIST); col <= cell(maxX + FREEFORM_OVERLAP_DIST); col++) {
+				for (int row = cell(minY - FREEFORM_OVERLAP_DIST); row <= cell(maxY + FREEFORM_OVERLAP_DIST); row++) {
+					Cell cell = cells.get(key(col, row));
+					if (cell == null)
+						continue;
+					for (int j = 0; j < cell.size; j++) {
+						Stroke other = cell.strokes[j];
+						if (other.stamp == stamp || !boundsNear(freeform, other.freeform))
+							continue;
+						Freeform otherFreeform = other.freeform;
+						int k = cell.segments[j];
+						if (Geometry.segmentDistance(freeform.xs[i], freeform.ys[i], freeform.xs[i+1], freeform.ys[i+1],
+								otherFreeform.xs[k], otherFreeform.ys[k], otherFreeform.xs[k+1], otherFreeform.ys[k+1]) <= FREEFORM_OVERLAP_DIST) {
+							other.stamp = stamp;
+							stroke.overlapping.add(other);
+							other.overlapping.add(stroke);
+							if (!stale)
+								union(stroke, other);
+						}
+					}
+				}
+			}
+		}
+		for (int i = 0; i < freeform.size - 1; i++) {
+			for (int col = cell(Math.min(freeform.xs[i], freeform.xs[i+1])); col <= cell(Math.max(freeform.xs[i], freeform.xs[i+1])); col++) {
+				for (int row = cell(Math.min(freeform.ys[i], freeform.ys[i+1])); row <= cell(Math.max(freeform.ys[i], freeform.ys[i+1])); row++) {
+					Long key = key(col, row);
+					Cell cell = cells.get(key);
+					if (cell == null) {
+						cell = new Cell();
+						cells.put(key, cell);
+					}
+					if (cell.size == 0 || cell.strokes[cell.size - 1] != stroke)
+						stroke.cellKeys.add(key);
+					cell.add(stroke, i);
+				}
+			}
+		}
+	}
+
+	private void displace(Stroke stroke) {
+		for (int i = 0; i < stroke.cellKeys.size(); i++) {
+			Long key = stroke.cellKeys.get(i);
+			Cell cell = cells.get(key);
+			if (cell == null)
+				continue;
+			cell.removeAll(stroke);
+			if (cell.size == 0)
+				cells.remove(key);
+		}
+		stroke.cellKeys.clear();
+		for (int i = 0; i < stroke.overlapping.size(); i++)
+			stroke.overlapping.get(i).overlapping.remove(stroke);
+		stroke.overlapping.clear();
+	}
+
+	private static boolean boundsNear(Freeform f1, Freeform f2) {
+		return f1.minX() - FREEFORM_OVERLAP_DIST <= f2.maxX() && f2.minX() - FREEFORM_OVERLAP_DIST <= f1.maxX()
+				&& f1.minY() - FREEFORM_OVERLAP_DIST <= f2.maxY() && f2.minY() - FREEFORM_OVERLAP_DIST <= f1.maxY();
+	}
+}
@@ -0,0 +1,21 @@
+package spiderdrawer.shape;
+
+import javax.swing.SwingUtilities;
+
+/*
+ * Once confined, the scene may only change on the event dispatch thread, which is then its only writer and reader,
+ * so that a change made anywhere else fails instead of racing painting.
+ */
+class ThreadConfinement {
+
+	private boolean confined = false;
+
+	void confine() {
+		confined = true;
+	}
+
+	void check() {
+		if (confined && !SwingUtilities.isEventDispatchThread())
+			throw new IllegalStateException("Scene changed on " + Thread.currentThread().getName() + ", off the event dispatch thread");
+	}
+}
@@ -0,0 +1,329 @@
+package spiderdrawer.shape;
+
+import static spiderdrawer.Parameters.ZONE_TEST_AREA;
+
+import java.awt.Rectangle;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+
+/*
+ * Works out which zones of a box exist from the arrangement of its circles, instead of testing every subset.
+ * Every zone touches either a crossing point of two circles, where the four zones around the point are
+ * both circles' insides and outsides combined with the circles containing the point, or a circle crossing
+ * no other, whose inside and outside are found at any point on it. This gives O(n^3) work for n circles.
+ * Near tangent circles and crossing points close to a third circle are left to the Area test (compute returns null),
+ * as there the answer depends on how Area approximates the circles.
+ *
+ * Also tests whether a single zone, clipped to a box, is empty (isEmpty). Any non empty zone has a piece of
+ * circle arc or box edge on its boundary, so it is enough to look just either side of the middle of every arc and
+ * edge piece between crossing points. ZONE_TEST_AREA switches back to building an Area, to cross-check the two.
+ */
+class Zones {
+
+	private static final double DEGENERATE_DIST = 0.5;
+	private static final double SAMPLE_OFFSET = 1e-6;
+
+	/* The order Box.checkZones visits subsets in: a longer zone before the zones it starts with. */
+	private static final Comparator<BitSet> VISIT_ORDER = new Comparator<BitSet>() {
+		@Override
+		public int compare(BitSet z1, BitSet z2) {
+			int i = z1.nextSetBit(0);
+			int j = z2.nextSetBit(0);
+			while (i >= 0 && j >= 0) {
+				if (i != j)
+					return i - j;
+				i = z1.nextSetBit(i+1);
+				j = z2.nextSetBit(j+1);
+			}
+			if (i >= 0)
+				return -1;
+			if (j >= 0)
+				return 1;
+			return 0;
+		}
+	};
+
+	static boolean isEmpty(Rectangle rect, ArrayList<Circle> included, ArrayList<Circle> excluded) {
+		if (ZONE_TEST_AREA)
+			return area(rect, included, excluded).isEmpty();
+		return !exists(rect, included, excluded);
+	}
+
+	static Area area(Rectangle rect, ArrayList<Circle> included, ArrayList<Circle> excluded) {
+		Area area = new Area(rect);
+		for (int i = 0; i < included.size(); i++) {
+			Circle circle = included.get(i);
+			area.intersect(new Area(new Ellipse2D.Float(circle.center.x-circle.radius, circle.center.y-circle.radius, circle.radius*2, circle.radius*2)));
+		}
+		if (excluded != null) {
+			for (int i = 0; i < excluded.size(); i++) {
+				Circle circle = excluded.get(i);
+				area.subtract(new Area(new Ellipse2D.Float(circle.center.x-circle.radius, circle.center.y-circle.radius, circle.radius*2, circle.radius*2)));
+			}
+		}
+		return area;
+	}
+
+	static boolean exists(Rectangle rect, ArrayList<Circle> included, ArrayList<Circle> excluded) {
+		if (rect.width <= 0 || rect.height <= 0)
+			return false;
+		ArrayList<Circle> all = new ArrayList<Circle>(included);
+		if (excluded != null)
+			all.addAll(excluded);
+		double[] crossings = new double[2*all.size() + 8];
+		for (int i = 0; i < all.size(); i++) {
+			Circle circle = all.get(i);
+			int count = circleCrossings(circle, all, rect, crossings);
+			if (count == 0) {
+				if (sampleArc(circle, 0, rect, included, excluded))
+					return true;
+				continue;
+			}
+			Arrays.sort(crossings, 0, count);
+			for (int k = 0; k < count; k++) {
+				double next = (k+1 < count)? crossings[k+1] : crossings[0] + 2*Math.PI;
+				if (next - crossings[k] > 0 && sampleArc(circle, (crossings[k] + next)/2, rect, included, excluded))
+					return true;
+			}
+		}
+		for (int edge = 0; edge < 4; edge++) {
+			boolean horizontal = edge < 2;
+			double fixed = (edge == 0)? rect.y : (edge == 1)? rect.y + rect.height : (edge == 2)? rect.x : rect.x + rect.width;
+			double start = horizontal? rect.x : rect.y;
+			double end = horizontal? rect.x + rect.width : rect.y + rect.height;
+			double inward = (edge == 0 || edge == 2)? SAMPLE_OFFSET : -SAMPLE_OFFSET;
+			int count = 0;
+			crossings[count++] = start;
+			crossings[count++] = end;
+			for (int i = 0; i < all.size(); i++)
+				count = edgeCrossings(all.get(i), horizontal, fixed, start, end, crossings, count);
+			Arrays.sort(crossings, 0, count);
+			for (int k = 0; k+1 < count; k++) {
+				if (crossings[k+1] - crossings[k] <= 0)
+					continue;
+				double mid = (crossings[k] + crossings[k+1])/2;
+				double x = horizontal? mid : fixed + inward;
+				double y = horizontal? fixed + inward : mid;
+				if (inZone(x, y, rect, included, excluded))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Angles on the circle where other circles and the rectangle cross or touch it, written into result.
+	 */
+	private static int circleCrossings(Circle circle, ArrayList<Circle> all, Rectangle rect, double[] result) {
+		int count = 0;
+		for (int j = 0; j < all.size(); j++) {
+			Circle other = all.get(j);
+			double dx = other.center.x - circle.center.x;
+			double dy = other.center.y - circle.center.y;
+			double d = Math.sqrt(dx*dx + dy*dy);
+			if (d == 0 || d > circle.radius + other.radius || d < Math.abs(circle.radius - other.radius))
+				continue;
+			double cos = (circle.radius*circle.radius + d*d - other.radius*other.radius) / (2*circle.radius*d);
+			double half = Math.acos(Math.max(-1, Math.min(1, cos)));
+			double angle = Math.atan2(dy, dx);
+			result[count++] = angle - half;
+			result[count++] = angle + half;
+		}
+		int[] xs = {rect.x, rect.x + rect.width};
+		int[] ys = {rect.y, rect.y + rect.height};
+		for (int k = 0; k < 2; k++) {
+			double dx = xs[k] - circle.center.x;
+			if (Math.abs(dx) <= circle.radius) {
+				double dy = Math.sqrt(circle.radius*circle.radius - dx*dx);
+				result[count++] = Math.atan2(dy, dx);
+				result[count++] = Math.atan2(-dy, dx);
+			}
+			double dy = ys[k] - circle.center.y;
+			if (Math.abs(dy) <= circle.radius) {
+				double dxy = Math.sqrt(circle.radius*circle.radius - dy*dy);
+				result[count++] = Math.atan2(dy, dxy);
+				result[count++] = Math.atan2(dy, -dxy);
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * Positions along an edge of the rectangle where the circle crosses it, appended to result.
+	 */
+	private static int edgeCrossings(Circle circle, boolean horizontal, double fixed, double start, double end, double[] result, int count) {
+		double across = fixed - (horizontal? circle.center.y : circle.center.x);
+		if (Math.abs(across) > circle.radius)
+			return count;
+		double along = Math.sqrt(circle.radius*circle.radius - across*across);
+		double center = horizontal? circle.center.x : circle.center.y;
+		if (center - along > start && center - along < end)
+			result[count++] = center - along;
+		if (center + along > start && center + along < end)
+			result[count++] = center + along;
+		return count;
+	}
+
+	private static boolean sampleArc(Circle circle, double angle, Rectangle rect, ArrayList<Circle> included, ArrayList<Circle> excluded) {
+		double cos = Math.cos(angle);
+		double sin = Math.sin(angle);
+		return inZone(circle.center.x + (circle.radius - SAMPLE_OFFSET)*cos, circle.center.y + (circle.radius - SAMPLE_OFFSET)*sin, rect, included, excluded)
+				|| inZone(circle.center.x + (circle.radius + SAMPLE_OFFSET)*cos, circle.center.y + (circle.radius + SAMPLE_OFFSET)*sin, rect, included, excluded);
+	}
+
+	private static boolean inZone(double x, double y, Rectangle rect, ArrayList<Circle> included, ArrayList<Circle> excluded) {
+		if (x <= rect.x || x >= rect.x + rect.width || y <= rect.y || y >= rect.y + rect.height)
+			return false;
+		for (int i = 0; i < included.size(); i++) {
+			Circle circle = included.get(i);
+			double dx = x - circle.center.x;
+			double dy = y - circle.center.y;
+			if (dx*dx + dy*dy >= (double) circle.radius*circle.radius)
+				return false;
+		}
+		if (excluded != null) {
+			for (int i = 0; i < excluded.size(); i++) {
+				Circle circle = excluded.get(i);
+				double dx = x - circle.center.x;
+				double dy = y - circle.center.y;
+				if (dx*dx + dy*dy <= (double) circle.radius*circle.radius)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private final ArrayList<Circle> circles;
+	private final HashSet<BitSet> present = new HashSet<BitSet>();
+
+	private Zones(ArrayList<Circle> circles) {
+		this.circles = new ArrayList<Circle>(circles);
+	}
+
+	static Zones compute(ArrayList<Circle> circles) {
+		Zones zones = new Zones(circles);
+		if (!zones.arrange())
+			return null;
+		return zones;
+	}
+
+	private boolean arrange() {
+		int n = circles.size();
+		boolean[] crossed = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			Circle ci = circles.get(i);
+			for (int j = i + 1; j < n; j++) {
+				Circle cj = circles.get(j);
+				double dx = cj.center.x - ci.center.x;
+				double dy = cj.center.y - ci.center.y;
+				double d = Math.sqrt(dx*dx + dy*dy);
+				double outer = d - (ci.radius + cj.radius);
+				double inner = Math.abs(ci.radius - cj.radius) - d;
+				if (Math.abs(outer) < DEGENERATE_DIST || Math.abs(inner) < DEGENERATE_DIST)
+					return false;
+				if (outer > 0 || inner > 0)
+					continue;
+				crossed[i] = true;
+				crossed[j] = true;
+				/* Crossing points, a along the centre line and h either side of it. */
+				double a = (ci.radius*ci.radius - cj.radius*cj.radius + d*d) / (2*d);
+				double h = Math.sqrt(Math.max(0, ci.radius*ci.radius - a*a));
+				double mx = ci.center.x + a*dx/d;
+				double my = ci.center.y + a*dy/d;
+				if (!addCrossing(i, j, mx - h*dy/d, my + h*dx/d) || !addCrossing(i, j, mx + h*dy/d, my - h*dx/d))
+					return false;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			if (crossed[i])
+				continue;
+			Circle circle = circles.get(i);
+			BitSet zone = containing(circle.center.x + circle.radius, circle.center.y, i, i);
+			if (zone == null)
+				return false;
+			addZone(zone);
+			zone = (BitSet) zone.clone();
+			zone.set(i);
+			addZone(zone);
+		}
+		return true;
+	}
+
+	private boolean addCrossing(int i, int j, double x, double y) {
+		BitSet zone = containing(x, y, i, j);
+		if (zone == null)
+			return false;
+		for (int k = 0; k < 4; k++) {
+			BitSet around = (BitSet) zone.clone();
+			around.set(i, (k & 1) != 0);
+			around.set(j, (k & 2) != 0);
+			addZone(around);
+		}
+		return true;
+	}
+
+	/*
+	 * The circles other than i and j containing the point, or null if the point is too close to one of them to tell.
+	 */
+	private BitSet containing(double x, double y, int i, int j) {
+		BitSet zone = new BitSet(circles.size());
+		for (int k = 0; k < circles.size(); k++) {
+			if (k == i || k == j)
+				continue;
+			Circle circle = circles.get(k);
+			double dist = Math.hypot(x - circle.center.x, y - circle.center.y) - circle.radius;
+			if (Math.abs(dist) < DEGENERATE_DIST)
+				return null;
+			if (dist < 0)
+				zone.set(k);
+		}
+		return zone;
+	}
+
+	private void addZone(BitSet zone) {
+		if (!zone.isEmpty())
+			present.add(zone);
+	}
+
+	private ArrayList<Circle> toList(BitSet zone) {
+		ArrayList<Circle> list = new ArrayList<Circle>(zone.cardinality());
+		for (int i = zone.nextSetBit(0); i >= 0; i = zone.nextSetBit(i+1))
+			list.add(circles.get(i));
+		return list;
+	}
+
+	ArrayList<ArrayList<Circle>> present() {
+		ArrayList<BitSet> sorted = new ArrayList<BitSet>(present);
+		Collections.sort(sorted, VISIT_ORDER);
+		ArrayList<ArrayList<Circle>> result = new ArrayList<ArrayList<Circle>>(sorted.size());
+		for (int i = 0; i < sorted.size(); i++)
+			result.add(toList(sorted.get(i)));
+		return result;
+	}
+
+	/*
+	 * Every subset not present is missing, so this output is as long as the subsets that don't exist,
+	 * but each one is only a set lookup.
+	 */
+	ArrayList<ArrayList<Circle>> missing() {
+		ArrayList<ArrayList<Circle>> result = new ArrayList<ArrayList<Circle>>();
+		missing(result, new BitSet(circles.size()), 0);
+		return result;
+	}
+
+	private void missing(ArrayList<ArrayList<Circle>> result, BitSet found, int done) {
+		for (int i = done; i < circles.size(); i++) {
+			found.set(i);
+			missing(result, found, i+1);
+			found.clear(i);
+		}
+		if (!found.isEmpty() && !present.contains(found))
+			result.add(toList(found));
+	}
+}
@@ -1,5 +1,7 @@
 package spiderdrawer.shape.containers;
 
+import spiderdrawer.shape.interfaces.Related;
+
 public abstract class Container<T,S> {
 
 	protected S parent;
@@ -8,4 +10,19 @@ public abstract class Container<T,S> {
 		this.parent = parent;
 	}
 	
+	/*
+	 * Both sides are told before a relation changes, as the other side may have no shape list to tell.
+	 */
+	protected void changing(Object other) {
+		if (parent instanceof Related)
+			((Related) parent).relationsChanging();
+		if (other instanceof Related)
+			((Related) other).relationsChanging();
+	}
+	
+	protected void changed() {
+		if (parent instanceof Related)
+			((Related) parent).relationsChanged();
+	}
+	
 }
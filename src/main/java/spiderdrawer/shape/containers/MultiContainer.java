@@ -15,8 +15,10 @@ public class MultiContainer<T,S> extends Container<T,S> {
 	}
 	
 	public void add(T t, Container<S,T> c) {
+		changing(t);
 		list.add(t);
 		containerList.add(c);
+		changed();
 		if (t != null) {
 			if (c instanceof SingleContainer) {
 				SingleContainer<S,T> singleContainer = (SingleContainer<S, T>) c;
@@ -34,8 +36,10 @@ public class MultiContainer<T,S> extends Container<T,S> {
 		int index = list.indexOf(t);
 		if (index != -1) {
 			Container<S,T> c = containerList.get(index);
+			changing(t);
 			list.remove(index);
 			containerList.remove(index);
+			changed();
 			if (t != null) {
 				if (c instanceof SingleContainer) {
 					SingleContainer<S,T> singleContainer = (SingleContainer<S, T>) c;
@@ -59,6 +63,56 @@ public class MultiContainer<T,S> extends Container<T,S> {
 			remove(list.get(0));
 	}
 	
+	/*
+	 * Adds t with the container on its side without adding parent to that container, for rebuilding
+	 * both sides of a relation as they were saved.
+	 */
+	public void restore(T t, Container<S,T> c) {
+		changing(t);
+		list.add(t);
+		containerList.add(c);
+		changed();
+	}
+	
+	/*
+	 * Removes t without removing parent from the container on its side.
+	 */
+	public void drop(T t) {
+		int index = list.indexOf(t);
+		if (index != -1) {
+			changing(t);
+			list.remove(index);
+			containerList.remove(index);
+			changed();
+		}
+	}
+	
+	/*
+	 * Empties the container without removing parent from the containers on the other side.
+	 */
+	public void clear() {
+		changing(null);
+		list.clear();
+		containerList.clear();
+		changed();
+	}
+	
+	/*
+	 * Sets the container to hold ts, with the containers on their side, without changing those containers.
+	 */
+	public void restore(List<T> ts, List<Container<S,T>> cs) {
+		changing(null);
+		list.clear();
+		containerList.clear();
+		list.addAll(ts);
+		containerList.addAll(cs);
+		changed();
+	}
+	
+	public Container<S,T> getContainer(int index) {
+		return containerList.get(index);
+	}
+	
 	public ArrayList<T> list() {
 		return list;
 	}
@@ -14,8 +14,11 @@ public class SingleContainer<T,S> extends Container<T,S> {
 	public void set(T t, Container<S,T> c) {		
 		T oldT = this.t;
 		Container<S,T> oldC = this.c;
+		changing(oldT);
+		changing(t);
 		this.t = t;
 		this.c = c;
+		changed();
 		if (oldT != null) {
 			if (oldC instanceof SingleContainer) {
 				((SingleContainer<S, T>) oldC).set(null, this);
@@ -38,6 +41,22 @@ public class SingleContainer<T,S> extends Container<T,S> {
 			
 	}
 	
+	/*
+	 * Sets t with the container on its side without setting parent in that container, for rebuilding
+	 * both sides of a relation as they were saved.
+	 */
+	public void restore(T t, Container<S,T> c) {
+		changing(this.t);
+		changing(t);
+		this.t = t;
+		this.c = c;
+		changed();
+	}
+	
+	public Container<S,T> getContainer() {
+		return c;
+	}
+	
 	public T get() {
 		return t;
 	}
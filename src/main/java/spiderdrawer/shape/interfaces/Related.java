@@ -0,0 +1,10 @@
+package spiderdrawer.shape.interfaces;
+
+/*
+ * A shape whose relations to other shapes are kept in containers, told before and after one of them changes.
+ */
+public interface Related extends Shape {
+
+	public void relationsChanging();
+	public void relationsChanged();
+}
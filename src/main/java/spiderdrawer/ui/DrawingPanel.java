@@ -1,11 +1,11 @@
 package spiderdrawer.ui;
 
-import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
-import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
@@ -14,6 +14,7 @@ import java.awt.image.BufferedImage;
 
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import spiderdrawer.Action;
 import spiderdrawer.ActionManager;
@@ -21,8 +22,8 @@ import spiderdrawer.exception.EmptyContainerException;
 import spiderdrawer.exception.InvalidShapeException;
 import spiderdrawer.recognizer.RataRecognizer;
 import spiderdrawer.recognizer.SpiderRecognizer;
+import spiderdrawer.recognizer.StrokeTiming;
 import spiderdrawer.recognizer.TessRecognizer;
-import spiderdrawer.shape.Arrays;
 import spiderdrawer.shape.Box;
 import spiderdrawer.shape.Circle;
 import spiderdrawer.shape.Connective;
@@ -31,18 +32,36 @@ import spiderdrawer.shape.Label;
 import spiderdrawer.shape.Line;
 import spiderdrawer.shape.Logical;
 import spiderdrawer.shape.Point;
+import spiderdrawer.shape.SceneFormat;
+import spiderdrawer.shape.SceneJournal;
 import spiderdrawer.shape.Shading;
+import spiderdrawer.shape.ShapeList;
 import spiderdrawer.shape.interfaces.Deletable;
 import spiderdrawer.shape.interfaces.Drawable;
 import spiderdrawer.shape.interfaces.Movable;
 import spiderdrawer.shape.interfaces.Shape;
-import static spiderdrawer.Parameters.RECOGNITION_SLEEP;
+import static spiderdrawer.Parameters.AUTOSAVE_DIR;
+import static spiderdrawer.Parameters.AUTOSAVE_FILE;
+import static spiderdrawer.Parameters.DRAG_FRAME_DELAY;
+import static spiderdrawer.Parameters.RECOGNITION_QUEUE_SIZE;
+import static spiderdrawer.Parameters.RECOGNITION_RETRIES;
+import static spiderdrawer.Parameters.RECOGNITION_RETRY;
+import static spiderdrawer.Parameters.RECOGNITION_THREADS;
 
-import java.lang.reflect.Constructor;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -50,7 +69,18 @@ import java.util.Set;
  */
 public class DrawingPanel extends JPanel {
     
-    private final ArrayList<Shape> shapeList = new ArrayList<Shape>();
+	private static final ThreadFactory RECOGNITION_THREAD_FACTORY = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "recognition");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+	
+    private final ShapeList shapeList = new ShapeList();
+    private final SceneLayers sceneLayers = new SceneLayers(shapeList);
+    private final SceneJournal journal = new SceneJournal(autosaveFile(".spi"), autosaveFile(".spj"), shapeList);
     private Freeform currentFreeform;
     private SpiderRecognizer spiderRecognizer;
     private RataRecognizer rataRecognizer;
@@ -58,11 +88,22 @@ public class DrawingPanel extends JPanel {
     private Movable toMove;
     private Point from = null;
     private Point originalFrom = null;
+    private Point dragTo = null;
+    private final Timer dragTimer;
     private Box drawingBox;
     private Action currentAction;
     private boolean deleted = false;
-    private ActionManager actionManager = new ActionManager();
+    private ActionManager actionManager = new ActionManager(journal);
     private final MainForm mainForm;
+    /*
+     * A job turned away by a full queue is tried again a few times, then its stroke is left as it was drawn.
+     */
+    private final ThreadPoolExecutor recognitionExecutor = new ThreadPoolExecutor(RECOGNITION_THREADS, RECOGNITION_THREADS, 0L, TimeUnit.MILLISECONDS,
+    		new ArrayBlockingQueue<Runnable>(RECOGNITION_QUEUE_SIZE), RECOGNITION_THREAD_FACTORY);
+    private final ScheduledExecutorService recognitionTimer = Executors.newSingleThreadScheduledExecutor(RECOGNITION_THREAD_FACTORY);
+    private final IdentityHashMap<Freeform, RecognitionJob> pendingRecognition = new IdentityHashMap<Freeform, RecognitionJob>();
+    private final StrokeTiming strokeTiming = new StrokeTiming();
+    private boolean penDown = false;
     
     
     /**
@@ -74,14 +115,29 @@ public class DrawingPanel extends JPanel {
         spiderRecognizer = new SpiderRecognizer(shapeList);
         rataRecognizer = new RataRecognizer("/lib/spider.model");
         tessRecognizer = new TessRecognizer();
+        dragTimer = new Timer(DRAG_FRAME_DELAY, new ActionListener() {
+        	@Override
+        	public void actionPerformed(ActionEvent e) {
+        		flushDrag();
+        	}
+        });
+        dragTimer.setRepeats(false);
         drawingBox = Box.create(0, 0, getWidth()-1, getHeight()-1, shapeList);
         shapeList.add(drawingBox);
+        /* A panel made on the event dispatch thread keeps every change to the scene there. */
+        if (SwingUtilities.isEventDispatchThread())
+        	shapeList.confineToEventThread();
         addComponentListener(new ComponentAdapter() {
 
             @Override
             public void componentResized(ComponentEvent e) {
-               drawingBox.resize(getWidth()-1, getHeight()-1);
-               drawingBox.recompute(false);
+               shapeList.beginBatch();
+               try {
+            	   drawingBox.resize(getWidth()-1, getHeight()-1);
+            	   shapeList.schedule(drawingBox, false);
+               } finally {
+            	   shapeList.endBatch();
+               }
                repaint();
             }
 
@@ -93,7 +149,6 @@ public class DrawingPanel extends JPanel {
 	        	originalFrom = from;
 	        	deleted = false;
             	if (SwingUtilities.isRightMouseButton(e)) {
-            		System.out.println("Mouse Down: Right clicking...");
             		currentAction.setDelete();
             		return;
             	}
@@ -112,50 +167,69 @@ public class DrawingPanel extends JPanel {
 	        		}
 	        	}
 	        	if (toMove != null) {
+	        		sceneLayers.activate(toMove);
 	        		return;
 	        	}
 	        	currentFreeform = new Freeform(e.getX(), e.getY());
+	        	sceneLayers.activate(currentFreeform);
+	        	strokeTiming.penDown(System.currentTimeMillis());
+	        	suspendWaiting();
 	        	shapeList.add(currentFreeform);
             	repaint();
             }
             
             public void mouseReleased(MouseEvent e) {
+            	dragTimer.stop();
+            	dragTo = null;
+            	sceneLayers.settle();
             	try {
             	if (SwingUtilities.isRightMouseButton(e)) {
             		if (from == null)
             			return;
             		Line line = new Line(from, new Point(e.getX(), e.getY()));
-            		for (int i = 0; i < shapeList.size(); i++) {
-            			if (shapeList.get(i) instanceof Deletable) {
-            				Deletable delShape = (Deletable) shapeList.get(i);
-            				if (delShape.equals(drawingBox)) {
-    	        				continue;
-    	        			}
-	            			if (delShape.intersects(line)  && !(delShape instanceof Shading)) {
-	            				shapeList.remove(i);
-	            				delShape.remove();
-	            				currentAction.add(delShape);
-	            			}
-            			}
-            		}
-            		if (deleted == false) {
+            		shapeList.beginBatch();
+            		try {
 	            		for (int i = 0; i < shapeList.size(); i++) {
-	            			if (shapeList.get(i) instanceof Shading) {
-	            				Shading shading = (Shading) shapeList.get(i);
-	            				if (shading.intersects(line)) {
+	            			if (shapeList.get(i) instanceof Deletable) {
+	            				Deletable delShape = (Deletable) shapeList.get(i);
+	            				if (delShape.equals(drawingBox)) {
+	    	        				continue;
+	    	        			}
+		            			if (delShape.intersects(line)  && !(delShape instanceof Shading)) {
 		            				shapeList.remove(i);
-		            				shading.remove();
-		            				currentAction.add(shading);
-	            				}
+		            				currentAction.add(delShape);
+		            				delShape.remove();
+		            				if (delShape instanceof Freeform)
+		            					cancelRecognition((Freeform) delShape);
+		            			}
 	            			}
 	            		}
+	            		if (deleted == false) {
+		            		for (int i = 0; i < shapeList.size(); i++) {
+		            			if (shapeList.get(i) instanceof Shading) {
+		            				Shading shading = (Shading) shapeList.get(i);
+		            				if (shading.intersects(line)) {
+			            				shapeList.remove(i);
+			            				currentAction.add(shading);
+			            				shading.remove();
+		            				}
+		            			}
+		            		}
+	            		}
+            		} finally {
+            			shapeList.endBatch();
             		}
                 	actionManager.add(currentAction);
             		repaint();
             	} else {
 	            	if (toMove != null) {
-	            		toMove.move(from, new Point(e.getX(), e.getY()));
-	            		toMove.recompute(false);
+	            		shapeList.beginBatch();
+	            		try {
+	            			toMove.move(from, new Point(e.getX(), e.getY()));
+	            			shapeList.schedule(toMove, false);
+	            		} finally {
+	            			shapeList.endBatch();
+	            		}
 	            		currentAction.setMove(toMove, originalFrom, new Point(e.getX(), e.getY()));
                     	actionManager.add(currentAction);
 	            		toMove = null;
@@ -163,75 +237,7 @@ public class DrawingPanel extends JPanel {
 	            		repaint();
 	            		return;
 	            	}
-		        	Thread timeThread = new Thread() {
-		                public void run() {
-		            		Freeform initial = currentFreeform;
-		                    Shape shape = null;
-		                    
-		            		Freeform[] arrFreeform = {initial};
-		            		if (initial.getOverlappingFreeforms(Arrays.freeformList(shapeList)).size() == 0 && !SpiderRecognizer.isTextSize(arrFreeform)) {
-			            		String resultingClass = rataRecognizer.classify(initial);
-		                    	System.out.println("Result:" + resultingClass);
-		                    	switch(resultingClass) {
-		                    		case "Text": shape = null; break;
-		                    		case "Box": shape = Box.create(initial, shapeList); break;
-		                    		case "Line":  shape = SpiderRecognizer.checkLine(initial, shapeList); break;
-		                    		case "Circle": shape = Circle.create(initial, shapeList); break;
-		                    		case "Dot": shape = Point.create(initial, shapeList); break;
-		                    		case "Shading": shape = Shading.create(initial, shapeList); break;
-		                    		case "Connective": shape = null; break;
-		                    	}
-		                    	if (shape != null)
-			                    	shapeList.remove(initial);
-
-		            		}
-		            		if (shape == null) {
-			                    try {
-			                        Thread.sleep(RECOGNITION_SLEEP);
-			                    } catch (InterruptedException e) {
-			                        e.printStackTrace();
-			                    }
-			                    if (initial.isRemoved())
-			                    	return;
-			                    ArrayList<Freeform> overlapFreeforms = initial.getOverlappingFreeforms(Arrays.freeformList(shapeList));
-		                    	overlapFreeforms.add(initial);
-			                    boolean textSize = SpiderRecognizer.isTextSize(overlapFreeforms.toArray(new Freeform[0]));
-			                    System.out.println(initial + ": textSize:" + textSize + " num " + overlapFreeforms.size() + " isLast" + initial.isLast(overlapFreeforms.toArray(new Freeform[0])));
-			                    if (initial != null && (initial.equals(currentFreeform) || !textSize || initial.isLast(overlapFreeforms.toArray(new Freeform[0])))) {
-			                    	if (overlapFreeforms.size() != 1 && !SpiderRecognizer.isAnyDotSize(overlapFreeforms.toArray(new Freeform[0]))) {
-			                    		shape = checkText(initial, true, true);
-			                    	} else {
-				                    	String resultingClass = rataRecognizer.classify(initial);
-				                    	System.out.println("Result:" + resultingClass);
-				                    	switch(resultingClass) {
-				                    		case "Text": shape = checkText(initial, false, true); break;
-				                    		case "Box": shape = Box.create(initial, shapeList); break;
-				                    		case "Line":  shape = SpiderRecognizer.checkLine(initial, shapeList); break;
-				                    		case "Circle": shape = Circle.create(initial, shapeList); break;
-				                    		case "Dot": shape = Point.create(initial, shapeList); break;
-				                    		case "Shading": shape = Shading.create(initial, shapeList); break;
-				                    		case "Connective": shape = checkText(initial, true, false); break;
-				                    	}
-				                    	if ((shape != null && !resultingClass.equals("Text")) || resultingClass.equals("Shading"))
-				                    		shapeList.remove(initial);
-			                    	}
-			                    }
-		            		}
-		                    if (shape != null) {
-		                    	if (!initial.isRemoved())
-		                    		 shapeList.add(shape);
-		                    	Action action = new Action(shapeList);
-		                    	action.setCreate(shape);
-		                    	actionManager.add(action);
-		                    }
-		                    repaint();
-		                    mainForm.checkUndoRedo();
-		                }
-		            };
-		
-		            timeThread.setDaemon(true);
-		            timeThread.start();
-		            
+		        	startRecognition(currentFreeform);
             	}
             	mainForm.checkUndoRedo();
             	} catch (Exception ex) {
@@ -249,29 +255,38 @@ public class DrawingPanel extends JPanel {
             			return;
             		Point to = new Point(e.getX(), e.getY());
             		Line line = new Line(from, to);
-            		for (int i = 0; i < shapeList.size(); i++) {
-            			if (shapeList.get(i) instanceof Deletable) {
-            				Deletable delShape = (Deletable) shapeList.get(i);
-            				if (delShape.equals(drawingBox)) {
-    	        				continue;
-    	        			}
-	            			if (delShape.intersects(line) && !(delShape instanceof Shading)) {
-	            				shapeList.remove(i);
-	            				delShape.remove();
-	            				currentAction.add(delShape);
-	            				deleted = true;
+            		shapeList.beginBatch();
+            		try {
+	            		for (int i = 0; i < shapeList.size(); i++) {
+	            			if (shapeList.get(i) instanceof Deletable) {
+	            				Deletable delShape = (Deletable) shapeList.get(i);
+	            				if (delShape.equals(drawingBox)) {
+	    	        				continue;
+	    	        			}
+		            			if (delShape.intersects(line) && !(delShape instanceof Shading)) {
+		            				shapeList.remove(i);
+		            				currentAction.add(delShape);
+		            				delShape.remove();
+		            				if (delShape instanceof Freeform)
+		            					cancelRecognition((Freeform) delShape);
+		            				deleted = true;
+		            			}
 	            			}
-            			}
+	            		}
+            		} finally {
+            			shapeList.endBatch();
             		}
             		from = to;
             	} else {
 	            	if (toMove != null) {
-	            		Point to = new Point(e.getX(), e.getY());
-	            		toMove.move(from, to);
-	            		toMove.recompute(true);
-	            		from = to;
+	            		dragTo = new Point(e.getX(), e.getY());
+	            		if (!dragTimer.isRunning())
+	            			dragTimer.start();
+	            		return;
 	            	} else {
 	            		currentFreeform.addPoint(e.getX(), e.getY());
+	            		repaintDamage();
+	            		return;
 	            	}
             	}
                 repaint();
@@ -279,6 +294,36 @@ public class DrawingPanel extends JPanel {
         });
     }
     
+    /*
+     * Applies the latest drag position, at most once per frame however fast the mouse events come.
+     * The full recompute still happens on release.
+     */
+    private void flushDrag() {
+    	if (toMove == null || dragTo == null)
+    		return;
+    	shapeList.beginBatch();
+    	try {
+    		toMove.move(from, dragTo);
+    		shapeList.schedule(toMove, true);
+    	} finally {
+    		shapeList.endBatch();
+    	}
+    	from = dragTo;
+    	dragTo = null;
+    	repaintDamage();
+    }
+    
+    /*
+     * Repaints only the area the stroke or the dragged shapes changed, when nothing else changed.
+     */
+    private void repaintDamage() {
+    	Rectangle damage = sceneLayers.damage();
+    	if (damage == null)
+    		repaint();
+    	else
+    		repaint(damage);
+    }
+    
     public void addCircle() {
     	Random generator = new Random();
     	int x = generator.nextInt(getWidth());
@@ -344,15 +389,28 @@ public class DrawingPanel extends JPanel {
     }
     
     public void clearDrawable() {
+    	resetScene();
+    	if (journal.isOpen())
+    		journal.checkpoint();
+    }
+    
+    private void resetScene() {
+    	ArrayList<RecognitionJob> jobs = new ArrayList<RecognitionJob>(pendingRecognition.values());
+    	for (int i = 0; i < jobs.size(); i++)
+    		jobs.get(i).cancel();
     	shapeList.clear();
-    	actionManager = new ActionManager();
+    	actionManager = new ActionManager(journal);
     	mainForm.checkUndoRedo();
     	drawingBox = Box.create(0, 0, getWidth()-1, getHeight()-1, shapeList);
     	shapeList.add(drawingBox);
     }
     
     public void undo() {
-    	actionManager.undo();
+    	try {
+    		actionManager.undo();
+    	} catch (IllegalStateException e) {
+    		e.printStackTrace();
+    	}
     	repaint();
     }
     
@@ -369,6 +427,10 @@ public class DrawingPanel extends JPanel {
     	return actionManager.canRedo();
     }
     
+    public long historyBytes() {
+    	return actionManager.historyBytes();
+    }
+    
     public String drawablesAsString() {
     	StringBuilder sb = new StringBuilder();
     	for (int i = 0; i < shapeList.size(); i++) {
@@ -388,9 +450,102 @@ public class DrawingPanel extends JPanel {
     }
 
     
-    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public byte[] drawablesAsBytes() {
+    	return SceneFormat.write(shapeList);
+    }
+    
+    /*
+     * Loads a .spi file in the binary format, or in the older text format.
+     * A scene saved whole starts with its drawing box, which is taken over and fitted to the panel.
+     */
+    public boolean loadDrawables(byte[] data) {
+    	boolean loaded = loadScene(data);
+    	if (loaded)
+    		fitDrawingBox();
+    	if (journal.isOpen())
+    		journal.checkpoint();
+    	return loaded;
+    }
+    
+    /*
+     * Whether the drawer last stopped without being closed, leaving an autosave to recover.
+     */
+    public boolean hasAutosave() {
+    	return journal.exists();
+    }
+    
+    /*
+     * Loads the scene left in the autosave, then starts autosaving.
+     */
+    public void recoverAutosave() {
+    	byte[] checkpoint = journal.readCheckpoint();
+    	if (checkpoint != null && loadScene(checkpoint)) {
+    		journal.replay(checkpoint);
+    		fitDrawingBox();
+    	}
+    	journal.checkpoint();
+    }
+    
+    public void startAutosave() {
+    	if (!journal.isOpen())
+    		journal.checkpoint();
+    }
+    
+    public void discardAutosave() {
+    	journal.discard();
+    }
+    
+    private static File autosaveFile(String extension) {
+    	return new File(new File(System.getProperty("user.home"), AUTOSAVE_DIR), AUTOSAVE_FILE + extension);
+    }
+    
+    /*
+     * Stops recognition when the drawer is closed: pending jobs are cancelled, the recognition threads stopped
+     * and the Tesseract engines ended.
+     */
+    public void shutdownRecognition() {
+    	ArrayList<RecognitionJob> jobs = new ArrayList<RecognitionJob>(pendingRecognition.values());
+    	for (int i = 0; i < jobs.size(); i++)
+    		jobs.get(i).cancel();
+    	recognitionTimer.shutdownNow();
+    	recognitionExecutor.shutdownNow();
+    	if (tessRecognizer != null)
+    		tessRecognizer.shutdown();
+    }
+    
+    private boolean loadScene(byte[] data) {
+    	if (!SceneFormat.isBinary(data))
+    		return loadDrawablesString((data == null)? null : new String(data, Charset.defaultCharset()));
+    	ArrayList<Shape> shapes;
+    	try {
+    		shapes = SceneFormat.read(data, shapeList);
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    		return false;
+    	}
+    	resetScene();
+    	if (!shapes.isEmpty() && shapes.get(0) instanceof Box) {
+    		shapeList.clear();
+    		drawingBox = (Box) shapes.get(0);
+    	}
+    	shapeList.addAll(shapes);
+    	return true;
+    }
+    
+    private void fitDrawingBox() {
+    	if (drawingBox.getWidth() != getWidth()-1 || drawingBox.getHeight() != getHeight()-1) {
+    		shapeList.beginBatch();
+    		try {
+    			drawingBox.resize(getWidth()-1, getHeight()-1);
+    			shapeList.schedule(drawingBox, false);
+    		} finally {
+    			shapeList.endBatch();
+    		}
+    	}
+    }
+    
 	public boolean loadDrawablesString(String str) {
-    	shapeList.clear();
+    	resetScene();
     	if (str == null) {
     		return false;
     	}
@@ -400,27 +555,16 @@ public class DrawingPanel extends JPanel {
     	for (int i = 0; i < line.length; i += 2) {	
     		String[] parameters = line[i+1].split(",");
 			try {
-				Class newDrawableClass = Class.forName(line[i]);
-				
 				if (line[i].equals(Freeform.class.getCanonicalName())) {
-					Class[] types = {ArrayList.class};
 					ArrayList<Point> points = new ArrayList<Point>();
 					for (int j = 0; j < parameters.length; j += 2) {
 						points.add(new Point(Integer.parseInt(parameters[j]), Integer.parseInt(parameters[j+1])));
 					}
-					Constructor constructor = newDrawableClass.getConstructor(types);
-	    			Object[] params = {points};
-	    			shapeList.add((Drawable)constructor.newInstance(params));
+	    			shapeList.add(new Freeform(points));
 				} else if (line[i].equals(Label.class.getCanonicalName())) {
-					Class[] types = {Character.TYPE, Integer.TYPE, Integer.TYPE};
-	    			Constructor constructor = newDrawableClass.getConstructor(types);
-	    			Object[] params = {parameters[0].charAt(0), Integer.parseInt(parameters[1]), Integer.parseInt(parameters[2])};
-	    			shapeList.add((Drawable)constructor.newInstance(params));
+	    			shapeList.add(new Label(parameters[0].charAt(0), 0, Integer.parseInt(parameters[1]), Integer.parseInt(parameters[2])));
 				} else if (line[i].equals(Circle.class.getCanonicalName())) {
-					Class[] types = {Integer.TYPE, Integer.TYPE, Integer.TYPE};
-	    			Constructor constructor = newDrawableClass.getConstructor(types);
-	    			Object[] params = {Integer.parseInt(parameters[0]), Integer.parseInt(parameters[1]), Integer.parseInt(parameters[2])};
-	    			shapeList.add((Drawable)constructor.newInstance(params));
+	    			shapeList.add(new Circle(Integer.parseInt(parameters[0]), Integer.parseInt(parameters[1]), Integer.parseInt(parameters[2])));
 				}
 			} catch (Exception e) {
 				// TODO Auto-generated catch block
@@ -432,71 +576,313 @@ public class DrawingPanel extends JPanel {
     	return true;
     }
     
-    private Freeform[] intersectingFreeforms(Freeform f) {
-    	Set<Freeform> intersectingFreeforms = f.overlappingFreeforms(Arrays.freeformList(shapeList), new HashSet<Freeform>());
-    	return intersectingFreeforms.toArray(new Freeform[0]);
+    private void startRecognition(Freeform freeform) {
+    	shapeList.strokeFinished(freeform);
+    	journal.record();
+    	strokeTiming.penUp(System.currentTimeMillis());
+    	resumeWaiting(freeform);
+    	RecognitionJob job = new RecognitionJob(freeform);
+    	pendingRecognition.put(freeform, job);
+    	job.start();
+    }
+    
+    /*
+     * No glyph is taken as finished while a stroke is being drawn.
+     */
+    private void suspendWaiting() {
+    	penDown = true;
+    	ArrayList<RecognitionJob> jobs = new ArrayList<RecognitionJob>(pendingRecognition.values());
+    	for (int i = 0; i < jobs.size(); i++)
+    		jobs.get(i).suspend();
+    }
+    
+    /*
+     * The strokes the new one overlaps start waiting again from now, the others wait out what was left.
+     */
+    private void resumeWaiting(Freeform freeform) {
+    	penDown = false;
+    	ArrayList<Freeform> overlapping = shapeList.overlappingStrokes(freeform);
+    	ArrayList<RecognitionJob> jobs = new ArrayList<RecognitionJob>(pendingRecognition.values());
+    	for (int i = 0; i < jobs.size(); i++)
+    		jobs.get(i).resume(overlapping.contains(jobs.get(i).initial));
+    }
+    
+    /*
+     * Strokes taken into a recognised shape.
+     */
+    private void removeStroke(Freeform freeform) {
+    	if (shapeList.remove(freeform))
+    		journal.record();
+    }
+    
+    private void cancelRecognition(Freeform freeform) {
+    	RecognitionJob job = pendingRecognition.get(freeform);
+    	if (job != null)
+    		job.cancel();
     }
     
-    private Shape checkText(Freeform freeform, boolean connective, boolean letter) {
-    	Freeform[] freeforms = intersectingFreeforms(freeform);
-		
-    	if (spiderRecognizer.closeToUnconnectedBox(freeforms)) {
-    		System.out.println("closeToUnconnectedBox");
-    		letter = false;
-    		connective = true;
-    	} else if (spiderRecognizer.closeToUnlabeledCircle(freeforms)) {
-    		System.out.println("closeToUnlabeledCircle");
-    		letter = true;
-    		connective = false;
+    /*
+     * Recognition of one stroke. Classification and OCR run on the recognition executor and the wait for
+     * more strokes on the recognition timer, while everything that reads or changes the scene runs on the
+     * event dispatch thread. Deleting the stroke, or it being taken into a text group, cancels the job.
+     */
+    private class RecognitionJob {
+    	private final Freeform initial;
+    	private Future<?> future;
+    	private volatile boolean cancelled = false;
+    	private boolean waiting = false;
+    	private long deadline;
+    	private int retries = 0;
+    	
+    	RecognitionJob(Freeform initial) {
+    		this.initial = initial;
     	}
     	
-    	Rectangle rect = SpiderRecognizer.surroundingRectangle(freeforms);
-		Character character = (connective)? ((letter)? tessRecognizer.classifyText(freeforms) : tessRecognizer.classifyConnective(freeforms)) : tessRecognizer.classifyLetter(freeforms);
-		if (!freeform.isLast(freeforms)) {
-			System.out.println("More being drawn...");
-			return null;
-		}
-		Shape shape = null;
-		if (character != null) {
-			Point center = new Point((int)rect.getCenterX(), (int)rect.getCenterY());
-			if (Character.isAlphabetic((int) character))
-				shape = Label.create(character, center, shapeList);
-			else 
-				shape = Connective.create(Logical.create(character), center, shapeList);
-		}
-		for (int i = 0; i < freeforms.length; i++)
-			shapeList.remove(freeforms[i]);
-		return shape;
+    	void start() {
+    		Freeform[] arrFreeform = {initial};
+    		if (shapeList.overlappingStrokes(initial).size() == 0 && !SpiderRecognizer.isTextSize(arrFreeform))
+    			classify(false);
+    		else
+    			waitForStrokes();
+    	}
+    	
+    	void cancel() {
+    		cancelled = true;
+    		if (future != null)
+    			future.cancel(false);
+    		if (pendingRecognition.get(initial) == this)
+    			pendingRecognition.remove(initial);
+    	}
+    	
+    	private void onEventThread(final Runnable step) {
+    		SwingUtilities.invokeLater(new Runnable() {
+    			@Override
+    			public void run() {
+    				if (cancelled || initial.isRemoved()) {
+    					cancel();
+    					return;
+    				}
+    				step.run();
+    			}
+    		});
+    	}
+    	
+    	private void submit(final Runnable work) {
+    		try {
+    			future = recognitionExecutor.submit(new Runnable() {
+    				@Override
+    				public void run() {
+    					if (cancelled)
+    						return;
+    					try {
+    						work.run();
+    					} catch (RuntimeException e) {
+    						e.printStackTrace();
+    						onEventThread(new Runnable() {
+    							@Override
+    							public void run() {
+    								finish(null);
+    							}
+    						});
+    					}
+    				}
+    			});
+    		} catch (RejectedExecutionException e) {
+    			if (recognitionExecutor.isShutdown())
+    				return;
+    			if (++retries > RECOGNITION_RETRIES) {
+    				finish(null);
+    				return;
+    			}
+    			future = recognitionTimer.schedule(new Runnable() {
+    				@Override
+    				public void run() {
+    					onEventThread(new Runnable() {
+    						@Override
+    						public void run() {
+    							submit(work);
+    						}
+    					});
+    				}
+    			}, RECOGNITION_RETRY, TimeUnit.MILLISECONDS);
+    		}
+    	}
+    	
+    	/*
+    	 * Waits until the pen has been idle for the user's usual gap between strokes of a glyph.
+    	 */
+    	private void waitForStrokes() {
+    		waiting = true;
+    		deadline = System.currentTimeMillis() + strokeTiming.idleThreshold();
+    		if (!penDown)
+    			scheduleDeadline();
+    	}
+    	
+    	private void scheduleDeadline() {
+    		future = recognitionTimer.schedule(new Runnable() {
+    			@Override
+    			public void run() {
+    				onEventThread(new Runnable() {
+    					@Override
+    					public void run() {
+    						if (!waiting || penDown || System.currentTimeMillis() < deadline)
+    							return;
+    						waiting = false;
+    						group();
+    					}
+    				});
+    			}
+    		}, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    	}
+    	
+    	void suspend() {
+    		if (waiting && future != null)
+    			future.cancel(false);
+    	}
+    	
+    	void resume(boolean reset) {
+    		if (!waiting)
+    			return;
+    		if (reset)
+    			deadline = System.currentTimeMillis() + strokeTiming.idleThreshold();
+    		if (future != null)
+    			future.cancel(false);
+    		scheduleDeadline();
+    	}
+    	
+    	private void group() {
+    		ArrayList<Freeform> overlapFreeforms = shapeList.overlappingStrokes(initial);
+    		overlapFreeforms.add(initial);
+    		Freeform[] overlapping = overlapFreeforms.toArray(new Freeform[0]);
+    		boolean textSize = SpiderRecognizer.isTextSize(overlapping);
+    		if (initial.equals(currentFreeform) || !textSize || initial.isLast(overlapping)) {
+    			if (overlapFreeforms.size() != 1 && !SpiderRecognizer.isAnyDotSize(overlapping))
+    				recognizeText(true, true, null);
+    			else
+    				classify(true);
+    		} else {
+    			finish(null);
+    		}
+    	}
+    	
+    	/*
+    	 * Before waiting for more strokes, text and connectives are left until the wait is over.
+    	 */
+    	private void classify(final boolean waited) {
+    		submit(new Runnable() {
+    			@Override
+    			public void run() {
+    				final String resultingClass = rataRecognizer.classify(initial);
+    				onEventThread(new Runnable() {
+    					@Override
+    					public void run() {
+    						classified(resultingClass, waited);
+    					}
+    				});
+    			}
+    		});
+    	}
+    	
+    	private void classified(String resultingClass, boolean waited) {
+    		Shape shape = null;
+    		switch(resultingClass) {
+    			case "Text":
+    				if (waited) {
+    					recognizeText(false, true, resultingClass);
+    					return;
+    				}
+    				break;
+    			case "Box": shape = Box.create(initial, shapeList); break;
+    			case "Line":  shape = SpiderRecognizer.checkLine(initial, shapeList); break;
+    			case "Circle": shape = Circle.create(initial, shapeList); break;
+    			case "Dot": shape = Point.create(initial, shapeList); break;
+    			case "Shading": shape = Shading.create(initial, shapeList); break;
+    			case "Connective":
+    				if (waited) {
+    					recognizeText(true, false, resultingClass);
+    					return;
+    				}
+    				break;
+    		}
+    		if (!waited) {
+    			if (shape == null) {
+    				waitForStrokes();
+    				return;
+    			}
+    			removeStroke(initial);
+    		} else if (shape != null || resultingClass.equals("Shading")) {
+    			removeStroke(initial);
+    		}
+    		finish(shape);
+    	}
+    	
+    	private void recognizeText(boolean connective, boolean letter, final String resultingClass) {
+    		final Freeform[] freeforms = shapeList.strokeCluster(initial);
+    		if (spiderRecognizer.closeToUnconnectedBox(freeforms)) {
+        		letter = false;
+        		connective = true;
+        	} else if (spiderRecognizer.closeToUnlabeledCircle(freeforms)) {
+        		letter = true;
+        		connective = false;
+        	}
+    		final Rectangle rect = SpiderRecognizer.surroundingRectangle(freeforms);
+    		final boolean isConnective = connective;
+    		final boolean isLetter = letter;
+    		submit(new Runnable() {
+    			@Override
+    			public void run() {
+    				final Character character = (isConnective)? ((isLetter)? tessRecognizer.classifyText(freeforms) : tessRecognizer.classifyConnective(freeforms)) : tessRecognizer.classifyLetter(freeforms);
+    				onEventThread(new Runnable() {
+    					@Override
+    					public void run() {
+    						textRecognized(freeforms, rect, character, resultingClass);
+    					}
+    				});
+    			}
+    		});
+    	}
+    	
+    	private void textRecognized(Freeform[] freeforms, Rectangle rect, Character character, String resultingClass) {
+    		if (!initial.isLast(freeforms)) {
+    			finish(null);
+    			return;
+    		}
+    		Shape shape = null;
+    		if (character != null) {
+    			Point center = new Point((int)rect.getCenterX(), (int)rect.getCenterY());
+    			if (Character.isAlphabetic((int) character))
+    				shape = Label.create(character, center, shapeList);
+    			else 
+    				shape = Connective.create(Logical.create(character), center, shapeList);
+    		}
+    		for (int i = 0; i < freeforms.length; i++) {
+    			removeStroke(freeforms[i]);
+    			if (freeforms[i] != initial)
+    				cancelRecognition(freeforms[i]);
+    		}
+    		if (shape != null && resultingClass != null && !resultingClass.equals("Text"))
+    			removeStroke(initial);
+    		finish(shape);
+    	}
+    	
+    	private void finish(Shape shape) {
+    		if (pendingRecognition.get(initial) == this)
+    			pendingRecognition.remove(initial);
+    		if (shape != null && !initial.isRemoved()) {
+    			shapeList.add(shape);
+    			Action action = new Action(shapeList);
+    			action.setCreate(shape);
+    			actionManager.add(action);
+    		}
+    		repaint();
+    		mainForm.checkUndoRedo();
+    	}
     }
     
     @Override
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
-        Graphics2D g2 = (Graphics2D) g;
-        g2.setStroke(new BasicStroke(2));
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        for (int i = 0; i < shapeList.size(); i++) {
-        	if (shapeList.get(i) instanceof Circle) {
-        		Circle circle = (Circle) shapeList.get(i);
-        		circle.draw(g2);
-        	}
-        }
-        for (int i = 0; i < shapeList.size(); i++) {
-        	if (shapeList.get(i) instanceof Line) {
-        		Line line = (Line) shapeList.get(i);
-        		line.draw(g2);
-        	}
-        }
-        for (int i = 0; i < shapeList.size(); i++) {
-        	if (shapeList.get(i) instanceof Drawable && !(shapeList.get(i) instanceof Circle) && !(shapeList.get(i) instanceof Line)) {
-        		Drawable drawable = (Drawable) shapeList.get(i);
-        		if (drawable.equals(drawingBox)) {	
-        			if (drawingBox.isValid())
-        			continue;
-        		}
-        		drawable.draw(g2);
-        	}
-        }
+        sceneLayers.paint((Graphics2D) g, getWidth(), getHeight(), getBackground(), drawingBox);
     }
     
     public String textualRep(boolean originalRep) {
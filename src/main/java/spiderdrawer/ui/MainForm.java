@@ -5,13 +5,9 @@ import java.awt.FileDialog;
 import java.awt.GraphicsEnvironment;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
@@ -21,6 +17,7 @@ import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 /**
  *
@@ -67,14 +64,13 @@ public class MainForm extends JDialog {
     	if (filename == null || filename.equals("")) {
     		return;
     	}
-		String content = null;
+		byte[] encoded = null;
 		try {
-			byte[] encoded = Files.readAllBytes(Paths.get(filename + ".spi"));
-	    	content = Charset.defaultCharset().decode(ByteBuffer.wrap(encoded)).toString();
+			encoded = Files.readAllBytes(Paths.get(filename + ".spi"));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		drawingPanel.loadDrawablesString(content);
+		drawingPanel.loadDrawables(encoded);
 		drawingPanel.repaint();
     }
     
@@ -98,11 +94,7 @@ public class MainForm extends JDialog {
 			}
     	} while (result == JOptionPane.YES_OPTION);
     	try {	
-			
-			FileWriter fw = new FileWriter(file.getAbsoluteFile());
-			BufferedWriter bw = new BufferedWriter(fw);
-			bw.write(drawingPanel.drawablesAsString());
-			bw.close();
+			Files.write(file.getAbsoluteFile().toPath(), drawingPanel.drawablesAsBytes());
     	} catch (IOException x) {
     	    System.err.format("IOException: %s%n", x);
     	}
@@ -300,6 +292,34 @@ public class MainForm extends JDialog {
 		redoMenuItem.setEnabled(drawingPanel.canRedo());
     }
     
+    /*
+     * Autosaving runs while the drawer is shown. An autosave left by a drawer that wasn't closed is restored if the
+     * user wants it, and hiding the drawer, as converting does, leaves none.
+     */
+    @Override
+    public void setVisible(boolean visible) {
+    	if (visible && !isVisible()) {
+    		if (drawingPanel.hasAutosave() && JOptionPane.showConfirmDialog(null, "The last diagram wasn't closed. Restore it?", "Restore", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION)
+    			drawingPanel.recoverAutosave();
+    		else
+    			drawingPanel.discardAutosave();
+    		drawingPanel.startAutosave();
+    	} else if (!visible) {
+    		drawingPanel.discardAutosave();
+    	}
+    	super.setVisible(visible);
+    }
+    
+    /*
+     * Closing the drawer normally leaves no autosave to recover, and stops recognition.
+     */
+    @Override
+    public void dispose() {
+    	drawingPanel.shutdownRecognition();
+    	drawingPanel.discardAutosave();
+    	super.dispose();
+    }
+    
     public boolean showDialog() {
     	done = false;
     	setVisible(true);
@@ -314,7 +334,13 @@ public class MainForm extends JDialog {
     	if (args.length > 0)
     		originalRep = true;
     	System.out.println("Using original rep: " + originalRep);
-        new MainForm(null, false, originalRep).setVisible(true);
+    	final boolean useOriginalRep = originalRep;
+    	SwingUtilities.invokeLater(new Runnable() {
+    		@Override
+    		public void run() {
+    			new MainForm(null, false, useOriginalRep).setVisible(true);
+    		}
+    	});
     }
 
 
@@ -0,0 +1,230 @@
+package spiderdrawer.ui;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import spiderdrawer.shape.Box;
+import spiderdrawer.shape.Circle;
+import spiderdrawer.shape.Freeform;
+import spiderdrawer.shape.Line;
+import spiderdrawer.shape.PaintArea;
+import spiderdrawer.shape.Shading;
+import spiderdrawer.shape.ShapeList;
+import spiderdrawer.shape.interfaces.Drawable;
+import spiderdrawer.shape.interfaces.Shape;
+import static spiderdrawer.Parameters.PAINT_MARGIN;
+
+/*
+ * Draws the scene as a cached image of the shapes that are not changing, with the active shapes (the stroke
+ * being drawn, the shape being dragged and whatever moves with it) drawn over it on every frame.
+ * Shapes are drawn circles first, then lines, then the rest, in each layer.
+ * The cached image is drawn again when a shape is added or removed, when a cached shape's validity changes,
+ * or when a cached shape moves. Validity is checked again only for the shapes ShapeList reports as possibly changed
+ * by a change of relations. While shapes are active a cached shape that moves is made active, so it is
+ * drawn again only once. A moving box or circle also makes the shadings drawn from it active, as their fill follows it.
+ * While shapes are active only they can change on screen, so damage() gives the area to paint again: where each
+ * active shape was last drawn and where it is now, or for a stroke the segments added since it was last drawn.
+ * Painting skips active shapes outside the clip.
+ */
+class SceneLayers {
+
+	private final ShapeList shapeList;
+	private final IdentityHashMap<Shape, Boolean> active = new IdentityHashMap<Shape, Boolean>();
+	private BufferedImage cache;
+	private int cacheVersion;
+	private boolean stale = true;
+	private final IdentityHashMap<Shape, Boolean> cachedValid = new IdentityHashMap<Shape, Boolean>();
+	private boolean validityChanged = false;
+	private final IdentityHashMap<Shape, Rectangle> cachedBounds = new IdentityHashMap<Shape, Rectangle>();
+	private final IdentityHashMap<Shape, Rectangle> painted = new IdentityHashMap<Shape, Rectangle>();
+	private final IdentityHashMap<Freeform, Integer> paintedPoints = new IdentityHashMap<Freeform, Integer>();
+
+	SceneLayers(ShapeList shapeList) {
+		this.shapeList = shapeList;
+	}
+
+	void activate(Shape shape) {
+		if (shape != null && active.put(shape, Boolean.TRUE) == null)
+			stale = true;
+	}
+
+	/*
+	 * Nothing is changing any more, so everything goes back into the cached image.
+	 */
+	void settle() {
+		if (active.isEmpty())
+			return;
+		active.clear();
+		painted.clear();
+		paintedPoints.clear();
+		stale = true;
+	}
+
+	/*
+	 * The area to paint again after the active shapes changed, or null if the whole scene has to be painted again.
+	 */
+	Rectangle damage() {
+		takeMoved();
+		if (active.isEmpty() || cache == null || cacheVersion != shapeList.version() || validityChanged)
+			return null;
+		Rectangle damage = null;
+		for (Shape shape : active.keySet()) {
+			if (shape instanceof Freeform && paintedPoints.containsKey(shape)) {
+				damage = include(damage, tailBounds((Freeform) shape, paintedPoints.get(shape)));
+				continue;
+			}
+			Rectangle bounds = PaintArea.bounds(shape);
+			if (bounds == null)
+				return null;
+			damage = include(damage, bounds);
+			if (painted.containsKey(shape))
+				damage = include(damage, painted.get(shape));
+			else
+				damage = include(damage, cachedBounds.get(shape));
+		}
+		return damage;
+	}
+
+	private static Rectangle include(Rectangle damage, Rectangle bounds) {
+		if (bounds == null || bounds.isEmpty())
+			return damage;
+		return (damage == null)? new Rectangle(bounds) : damage.union(bounds);
+	}
+
+	/*
+	 * The segments of the freeform from the point at index from onwards, joined to the point before it.
+	 */
+	private static Rectangle tailBounds(Freeform freeform, int from) {
+		int first = Math.max(from - 1, 0);
+		if (first >= freeform.size())
+			return null;
+		int minX = freeform.getX(first), maxX = minX;
+		int minY = freeform.getY(first), maxY = minY;
+		for (int i = first + 1; i < freeform.size(); i++) {
+			minX = Math.min(minX, freeform.getX(i));
+			maxX = Math.max(maxX, freeform.getX(i));
+			minY = Math.min(minY, freeform.getY(i));
+			maxY = Math.max(maxY, freeform.getY(i));
+		}
+		Rectangle bounds = new Rectangle(minX, minY, maxX - minX, maxY - minY);
+		bounds.grow(PAINT_MARGIN, PAINT_MARGIN);
+		return bounds;
+	}
+
+	private void takeMoved() {
+		Shape[] moved = shapeList.takeMoved();
+		for (int i = 0; i < moved.length; i++) {
+			if (active.containsKey(moved[i]))
+				continue;
+			stale = true;
+			if (!active.isEmpty()) {
+				active.put(moved[i], Boolean.TRUE);
+				if (moved[i] instanceof Box || moved[i] instanceof Circle) {
+					ArrayList<Shading> shadings = PaintArea.shadingsDrawnFrom(moved[i]);
+					for (int j = 0; j < shadings.size(); j++)
+						active.put(shadings.get(j), Boolean.TRUE);
+				}
+			}
+		}
+		Shape[] changed = shapeList.takeRelationsChanged();
+		for (int i = 0; i < changed.length; i++) {
+			Boolean valid = cachedValid.get(changed[i]);
+			if (valid != null && valid != ((Drawable) changed[i]).isValid())
+				validityChanged = true;
+		}
+	}
+
+	void paint(Graphics2D g2, int width, int height, Color background, Box drawingBox) {
+		takeMoved();
+		AffineTransform transform = g2.getTransform();
+		int imageWidth = (int) Math.ceil(width*transform.getScaleX());
+		int imageHeight = (int) Math.ceil(height*transform.getScaleY());
+		if (cache == null || cache.getWidth() != imageWidth || cache.getHeight() != imageHeight || cacheVersion != shapeList.version() || validityChanged)
+			stale = true;
+		if (stale && imageWidth > 0 && imageHeight > 0) {
+			if (cache == null || cache.getWidth() != imageWidth || cache.getHeight() != imageHeight)
+				cache = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+			Graphics2D cacheGraphics = cache.createGraphics();
+			cacheGraphics.setColor(background);
+			cacheGraphics.fillRect(0, 0, imageWidth, imageHeight);
+			cacheGraphics.scale(transform.getScaleX(), transform.getScaleY());
+			drawLayer(cacheGraphics, false, drawingBox, null);
+			cacheGraphics.dispose();
+			cacheVersion = shapeList.version();
+			stale = false;
+			validityChanged = false;
+		}
+		/* Only the part of the cached image inside the clip is copied. */
+		if (cache != null)
+			g2.drawImage(cache, 0, 0, width, height, null);
+		drawLayer(g2, true, drawingBox, g2.getClipBounds());
+	}
+
+	/*
+	 * Draws the active shapes that touch the clip, recording where they are drawn, or the others, recording their
+	 * validity and bounds.
+	 */
+	private void drawLayer(Graphics2D g2, boolean activeLayer, Box drawingBox, Rectangle clip) {
+		g2.setStroke(new BasicStroke(2));
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		ArrayList<Drawable> drawn = (activeLayer)? null : new ArrayList<Drawable>();
+		if (activeLayer) {
+			for (Shape shape : active.keySet()) {
+				painted.put(shape, PaintArea.bounds(shape));
+				if (shape instanceof Freeform)
+					paintedPoints.put((Freeform) shape, ((Freeform) shape).size());
+			}
+		}
+		for (int i = 0; i < shapeList.size(); i++) {
+			if (shapeList.get(i) instanceof Circle && active.containsKey(shapeList.get(i)) == activeLayer && !outside(shapeList.get(i), clip)) {
+				Circle circle = (Circle) shapeList.get(i);
+				circle.draw(g2);
+				if (drawn != null)
+					drawn.add(circle);
+			}
+		}
+		for (int i = 0; i < shapeList.size(); i++) {
+			if (shapeList.get(i) instanceof Line && active.containsKey(shapeList.get(i)) == activeLayer && !outside(shapeList.get(i), clip)) {
+				Line line = (Line) shapeList.get(i);
+				line.draw(g2);
+				if (drawn != null)
+					drawn.add(line);
+			}
+		}
+		for (int i = 0; i < shapeList.size(); i++) {
+			if (shapeList.get(i) instanceof Drawable && !(shapeList.get(i) instanceof Circle) && !(shapeList.get(i) instanceof Line)
+					&& active.containsKey(shapeList.get(i)) == activeLayer && !outside(shapeList.get(i), clip)) {
+				Drawable drawable = (Drawable) shapeList.get(i);
+				if (drawn != null)
+					drawn.add(drawable);
+				if (drawable.equals(drawingBox)) {
+					if (drawingBox.isValid())
+						continue;
+				}
+				drawable.draw(g2);
+			}
+		}
+		if (drawn != null) {
+			cachedValid.clear();
+			cachedBounds.clear();
+			for (int i = 0; i < drawn.size(); i++) {
+				cachedValid.put(drawn.get(i), drawn.get(i).isValid());
+				cachedBounds.put(drawn.get(i), PaintArea.bounds(drawn.get(i)));
+			}
+		}
+	}
+
+	private boolean outside(Shape shape, Rectangle clip) {
+		if (clip == null)
+			return false;
+		Rectangle bounds = painted.get(shape);
+		return bounds != null && !bounds.intersects(clip);
+	}
+}
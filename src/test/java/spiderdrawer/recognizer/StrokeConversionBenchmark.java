@@ -0,0 +1,124 @@
+package spiderdrawer.recognizer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+import spiderdrawer.shape.Freeform;
+import spiderdrawer.shape.Point;
+
+import com.hp.hpl.inkml.Brush;
+import com.hp.hpl.inkml.Ink;
+import com.hp.hpl.inkml.InkElement;
+import com.hp.hpl.inkml.Trace;
+import com.uoa.cs.ink.Packet;
+import com.uoa.cs.ink.PacketProperty;
+import com.uoa.cs.ink.Stroke;
+import com.uoa.cs.recognizer.DataStructures.MyLibrary;
+
+/*
+ * Times turning a freeform into the Stroke the classifier takes, through an InkML Trace as before
+ * and straight from the points.
+ * Usage: StrokeConversionBenchmark [points per stroke] [strokes]
+ */
+public class StrokeConversionBenchmark {
+
+	public static void main(String[] args) {
+		int numPoints = (args.length > 0)? Integer.parseInt(args[0]) : 3000;
+		int strokes = (args.length > 1)? Integer.parseInt(args[1]) : 500;
+		ArrayList<Point> points = new ArrayList<Point>(numPoints);
+		for (int i = 0; i < numPoints; i++)
+			points.add(new Point(100 + (int) (80*Math.cos(i/50.0)), 100 + (int) (80*Math.sin(i/50.0)) + i/20));
+		Freeform freeform = new Freeform(points);
+
+		for (int run = 0; run < 3; run++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < strokes; i++)
+				traceToStroke(freeformToTrace(freeform));
+			long trace = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < strokes; i++)
+				RataRecognizer.freeformToStroke(freeform);
+			long direct = System.nanoTime() - start;
+
+			System.out.println("Run " + run + ", " + numPoints + " points: through Trace " + trace/strokes/1000 + "us per stroke, "
+					+ "direct " + direct/strokes/1000 + "us per stroke");
+		}
+	}
+
+	/*
+	 * The conversion classify() used before, through an InkML Trace.
+	 */
+	private static Trace freeformToTrace(final Freeform f) {
+		Trace trace = new Trace();
+    	Ink ink = new Ink();
+    	trace.setAssociatedContext(ink.getCurrentContext());
+		
+		Collection<InkElement> definitions = ink.getDefinitions().getChildrenList();
+		for(InkElement elem : definitions)
+		{
+			if(elem instanceof com.hp.hpl.inkml.Brush && trace.getBrushRef().isEmpty())
+				trace.setAttribute("brushRef", "#"+ ((Brush)elem).getId());
+			
+			if(elem instanceof com.hp.hpl.inkml.Context && trace.getContextRef().isEmpty())
+				trace.setAttribute("contextRef", "#"+ ((com.hp.hpl.inkml.Context)elem).getId());
+		} 
+		float startTime = f.getTime(0);
+		trace.setTraceData("X", new float[] { f.getX(0) });
+    	trace.setTraceData("Y", new float[] { f.getY(0) });
+    	trace.setTraceData("T", new float[] { startTime - startTime });
+    	for (int i = 1; i < f.size(); i++) {
+    		
+    		trace.addToTraceData("X", new float[] { f.getX(i) });
+    		trace.addToTraceData("Y", new float[] { f.getY(i) });
+    		trace.addToTraceData("T", new float[] { f.getTime(i) - startTime });
+    	}
+    	return trace;
+	}
+	
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+	private static Stroke traceToStroke(final Trace t)
+	{
+		LinkedHashMap<String, ArrayList> traceData = t.getTraceData();
+		if(traceData!=null)
+		{
+			ArrayList<Float> xs = traceData.get("X");
+			ArrayList<Float> ys = traceData.get("Y");
+			ArrayList<Float> ts = traceData.get("T");
+	
+			Stroke stroke = new Stroke(new com.uoa.cs.ink.Ink());
+			int numPoints = xs.size();
+			
+			int initTime = -1;
+			int lastTime = -1;
+			for (int i = 0; i < numPoints; i++)
+			{
+				if(i==0)
+					initTime = RataRecognizer.millisecondsToPacketTime(ts.get(i)); 
+				
+				int currentT = i==0 ? 0 : RataRecognizer.millisecondsToPacketTime(ts.get(i)) - initTime;
+				
+				if(i==numPoints-1)
+					lastTime = currentT;
+				
+				int currentX = RataRecognizer.pixelsToHimetric(xs.get(i));
+				int currentY = RataRecognizer.pixelsToHimetric(ys.get(i));
+				
+				
+				Packet p = new Packet();
+				p.set(PacketProperty.X, currentX);
+				p.set(PacketProperty.Y, currentY);
+				p.set(PacketProperty.TimerTick, currentT);
+				stroke.addPacket(p);	
+			}
+			
+			stroke.setExtendedProperty(MyLibrary.TIMEGUID, lastTime);
+			return stroke;
+		}
+		else
+		{
+			return null;
+		}
+	}
+}
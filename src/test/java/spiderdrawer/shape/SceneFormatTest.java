@@ -0,0 +1,91 @@
+package spiderdrawer.shape;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import spiderdrawer.exception.EmptyContainerException;
+import spiderdrawer.exception.InvalidShapeException;
+import spiderdrawer.shape.interfaces.Shape;
+
+public class SceneFormatTest {
+
+	@Test
+	public void roundTripKeepsRelations() throws IOException, EmptyContainerException, InvalidShapeException {
+		ShapeList shapeList = TestScenes.diagram();
+		byte[] data = SceneFormat.write(shapeList);
+		ShapeList loaded = new ShapeList();
+		loaded.addAll(SceneFormat.read(data, loaded));
+
+		assertArrayEquals(data, SceneFormat.write(loaded));
+		assertEquals(((Box) shapeList.get(0)).asString(false), ((Box) loaded.get(0)).asString(false));
+		Circle circle = (Circle) loaded.get(3);
+		assertSame(loaded.get(1), circle.boxes.get(0));
+		assertSame(loaded.get(6), circle.label.get());
+		assertSame(loaded.get(9), circle.points.get(0));
+		assertSame(loaded.get(13), circle.shadings.get(0));
+		assertSame(((Point) loaded.get(9)).spider.get(), ((Point) loaded.get(10)).spider.get());
+		Connective connective = (Connective) loaded.get(14);
+		assertSame(loaded.get(1), connective.leftBox.get());
+		assertSame(loaded.get(2), connective.rightBox.get());
+	}
+
+	/*
+	 * Version 1 files have no count of listed shapes, and their shapes are loaded unattached.
+	 */
+	@Test
+	public void readsVersion1Files() throws IOException {
+		ShapeList shapeList = new ShapeList();
+		Circle circle = Circle.create(300, 250, 80, shapeList);
+		Label label = Label.create('A', new Point(230, 180), shapeList);
+		Freeform stroke = new Freeform(10, 20);
+		stroke.addPoint(15, 28);
+		stroke.addPoint(30, 25);
+		shapeList.add(circle);
+		shapeList.add(label);
+		shapeList.add(stroke);
+		byte[] data = SceneFormat.write(shapeList);
+		assertEquals(3, data[4]);
+		assertEquals(3, data[5]);
+		byte[] version1 = new byte[data.length - 1];
+		System.arraycopy(data, 0, version1, 0, 5);
+		version1[3] = 1;
+		System.arraycopy(data, 6, version1, 5, data.length - 6);
+
+		ArrayList<Shape> shapes = SceneFormat.read(version1, new ShapeList());
+		assertEquals(3, shapes.size());
+		Circle readCircle = (Circle) shapes.get(0);
+		assertEquals(300, readCircle.center.x);
+		assertEquals(250, readCircle.center.y);
+		assertEquals(80, readCircle.radius);
+		assertNull(readCircle.shapeList);
+		Label readLabel = (Label) shapes.get(1);
+		assertEquals('A', readLabel.letter);
+		assertNull(readLabel.circle.get());
+		Freeform readStroke = (Freeform) shapes.get(2);
+		assertEquals(3, readStroke.size());
+		assertEquals(15, readStroke.getX(1));
+		assertEquals(25, readStroke.getY(2));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsNewerVersions() throws IOException {
+		byte[] data = SceneFormat.write(TestScenes.diagram());
+		data[3] = SceneFormat.VERSION + 1;
+		SceneFormat.read(data, new ShapeList());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsTruncatedFiles() throws IOException {
+		byte[] data = SceneFormat.write(TestScenes.diagram());
+		byte[] truncated = new byte[data.length / 2];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		SceneFormat.read(truncated, new ShapeList());
+	}
+}
@@ -0,0 +1,112 @@
+package spiderdrawer.shape;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SceneJournalTest {
+
+	private File checkpointFile;
+	private File journalFile;
+	private ShapeList shapeList;
+	private SceneJournal journal;
+	/* The scene as written after each record, the first as checkpointed */
+	private ArrayList<byte[]> scenes;
+	private ArrayList<Long> lengths;
+
+	@Before
+	public void setUp() throws IOException {
+		checkpointFile = File.createTempFile("scene", ".spi");
+		journalFile = File.createTempFile("scene", ".spj");
+		shapeList = TestScenes.diagram();
+		journal = new SceneJournal(checkpointFile, journalFile, shapeList);
+		journal.checkpoint();
+		scenes = new ArrayList<byte[]>();
+		lengths = new ArrayList<Long>();
+		recorded();
+
+		Circle circle = Circle.create(600, 600, 60, shapeList);
+		shapeList.add(circle);
+		record();
+		shapeList.beginBatch();
+		try {
+			circle.move(new Point(600, 600), new Point(640, 580));
+			shapeList.schedule(circle, false);
+		} finally {
+			shapeList.endBatch();
+		}
+		record();
+		Label label = Label.create('D', new Point(560, 560), shapeList);
+		shapeList.add(label);
+		record();
+		Circle removed = (Circle) shapeList.get(5);
+		shapeList.beginBatch();
+		try {
+			shapeList.remove(removed);
+			removed.remove();
+		} finally {
+			shapeList.endBatch();
+		}
+		record();
+	}
+
+	@After
+	public void tearDown() {
+		journal.discard();
+	}
+
+	@Test
+	public void replaysEveryRecord() throws IOException {
+		assertEquals(scenes.size() - 1, replayInto(new ShapeList()));
+	}
+
+	@Test
+	public void replaysUpToATruncatedRecord() throws IOException {
+		byte[] data = Files.readAllBytes(journalFile.toPath());
+		for (int last = 1; last < scenes.size(); last++) {
+			/* The last record loses its final bytes, as when the program dies while appending it. */
+			int length = (int) (lengths.get(last) - 3);
+			byte[] truncated = new byte[length];
+			System.arraycopy(data, 0, truncated, 0, length);
+			Files.write(journalFile.toPath(), truncated);
+			ShapeList recovered = new ShapeList();
+			assertEquals(last - 1, replayInto(recovered));
+			assertArrayEquals(scenes.get(last - 1), SceneFormat.write(recovered));
+		}
+	}
+
+	@Test
+	public void replaysNothingOntoAnotherCheckpoint() throws IOException {
+		ShapeList other = new ShapeList();
+		byte[] checkpoint = SceneFormat.write(TestScenes.diagram().subList(0, 3));
+		other.addAll(SceneFormat.read(checkpoint, other));
+		assertEquals(0, new SceneJournal(checkpointFile, journalFile, other).replay(checkpoint));
+	}
+
+	private int replayInto(ShapeList recovered) throws IOException {
+		SceneJournal recovering = new SceneJournal(checkpointFile, journalFile, recovered);
+		byte[] checkpoint = recovering.readCheckpoint();
+		recovered.addAll(SceneFormat.read(checkpoint, recovered));
+		int replayed = recovering.replay(checkpoint);
+		assertArrayEquals(scenes.get(replayed), SceneFormat.write(recovered));
+		return replayed;
+	}
+
+	private void record() {
+		journal.record();
+		recorded();
+	}
+
+	private void recorded() {
+		scenes.add(SceneFormat.write(shapeList));
+		lengths.add(journalFile.length());
+	}
+}
@@ -0,0 +1,85 @@
+package spiderdrawer.shape;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import spiderdrawer.Action;
+import spiderdrawer.exception.EmptyContainerException;
+import spiderdrawer.exception.InvalidShapeException;
+import spiderdrawer.shape.interfaces.Deletable;
+import spiderdrawer.shape.interfaces.Shape;
+
+/*
+ * Undoing a deletion sets the scene back exactly, relations included, with the deleted shapes added back at the end
+ * of the list, and redoing it gives the scene as it was deleted.
+ */
+public class SceneStateTest {
+
+	@Test
+	public void undoRestoresEachDeletedShape() throws EmptyContainerException, InvalidShapeException {
+		int shapes = TestScenes.diagram().size();
+		for (int i = 1; i < shapes; i++) {
+			ShapeList shapeList = TestScenes.diagram();
+			if (!(shapeList.get(i) instanceof Shading))
+				checkDeleteUndoRedo(shapeList, Arrays.asList(shapeList.get(i)));
+		}
+	}
+
+	@Test
+	public void undoRestoresSeveralDeletedShapes() throws EmptyContainerException, InvalidShapeException {
+		ShapeList shapeList = TestScenes.diagram();
+		checkDeleteUndoRedo(shapeList, Arrays.asList(shapeList.get(3), shapeList.get(9), shapeList.get(14)));
+		shapeList = TestScenes.diagram();
+		checkDeleteUndoRedo(shapeList, Arrays.asList(shapeList.get(1), shapeList.get(2)));
+	}
+
+	private static void checkDeleteUndoRedo(ShapeList shapeList, List<Shape> deleting) throws EmptyContainerException, InvalidShapeException {
+		String description = ((Box) shapeList.get(0)).asString(false);
+		byte[] expected = SceneFormat.write(undoneOrder(shapeList, deleting));
+		Action action = new Action(shapeList);
+		action.setDelete();
+		shapeList.beginBatch();
+		try {
+			for (int i = 0; i < deleting.size(); i++) {
+				shapeList.remove(deleting.get(i));
+				action.add((Deletable) deleting.get(i));
+				((Deletable) deleting.get(i)).remove();
+			}
+		} finally {
+			shapeList.endBatch();
+		}
+		byte[] deleted = SceneFormat.write(shapeList);
+
+		action.undo();
+		assertArrayEquals("undo of " + deleting, expected, SceneFormat.write(shapeList));
+		assertEquals(description, ((Box) shapeList.get(0)).asString(false));
+		action.redo();
+		assertArrayEquals("redo of " + deleting, deleted, SceneFormat.write(shapeList));
+		action.undo();
+		assertArrayEquals("second undo of " + deleting, expected, SceneFormat.write(shapeList));
+	}
+
+	/*
+	 * The deleted shapes come back at the end of the list, followed by the shadings removed with their boxes.
+	 */
+	private static ArrayList<Shape> undoneOrder(ShapeList shapeList, List<Shape> deleting) {
+		ArrayList<Shape> gone = new ArrayList<Shape>(deleting);
+		for (int i = 0; i < deleting.size(); i++) {
+			if (deleting.get(i) instanceof Box && ((Box) deleting.get(i)).shading.get() != null)
+				gone.add(((Box) deleting.get(i)).shading.get());
+		}
+		ArrayList<Shape> order = new ArrayList<Shape>();
+		for (int i = 0; i < shapeList.size(); i++) {
+			if (!gone.contains(shapeList.get(i)))
+				order.add(shapeList.get(i));
+		}
+		order.addAll(gone);
+		return order;
+	}
+}
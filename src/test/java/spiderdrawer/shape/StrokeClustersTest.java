@@ -0,0 +1,70 @@
+package spiderdrawer.shape;
+
+import static org.junit.Assert.assertEquals;
+import static spiderdrawer.Parameters.FREEFORM_OVERLAP_DIST;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/*
+ * The clusters kept as strokes are added, finished and removed against searching every stroke for overlaps.
+ */
+public class StrokeClustersTest {
+
+	@Test
+	public void clustersMatchRecursiveSearch() {
+		Random generator = new Random(5);
+		for (int scene = 0; scene < 20; scene++) {
+			ShapeList shapeList = new ShapeList();
+			for (int s = 0; s < 40; s++) {
+				int x = generator.nextInt(600), y = generator.nextInt(600);
+				Freeform stroke = new Freeform(x, y);
+				shapeList.add(stroke);
+				int points = generator.nextInt(30);
+				for (int i = 0; i < points; i++) {
+					x += generator.nextInt(21) - 10;
+					y += generator.nextInt(21) - 10;
+					stroke.addPoint(x, y);
+				}
+				shapeList.strokeFinished(stroke);
+				if (generator.nextInt(6) == 0) {
+					Freeform[] strokes = shapeList.freeformArray();
+					shapeList.remove(strokes[generator.nextInt(strokes.length)]);
+				}
+				ArrayList<Freeform> strokes = new ArrayList<Freeform>(Arrays.asList(shapeList.freeformArray()));
+				for (int i = 0; i < strokes.size(); i++) {
+					Freeform freeform = strokes.get(i);
+					assertEquals(new HashSet<Freeform>(overlapping(freeform, strokes)), new HashSet<Freeform>(shapeList.overlappingStrokes(freeform)));
+					assertEquals(cluster(freeform, strokes, new HashSet<Freeform>()), new HashSet<Freeform>(Arrays.asList(shapeList.strokeCluster(freeform))));
+				}
+			}
+		}
+	}
+
+	private static ArrayList<Freeform> overlapping(Freeform freeform, ArrayList<Freeform> strokes) {
+		ArrayList<Freeform> overlapping = new ArrayList<Freeform>();
+		for (int i = 0; i < strokes.size(); i++) {
+			if (strokes.get(i) != freeform && freeform.overlaps(strokes.get(i), FREEFORM_OVERLAP_DIST))
+				overlapping.add(strokes.get(i));
+		}
+		return overlapping;
+	}
+
+	/*
+	 * The strokes reached from the freeform through overlapping ones, searched recursively.
+	 */
+	private static Set<Freeform> cluster(Freeform freeform, ArrayList<Freeform> strokes, Set<Freeform> visited) {
+		visited.add(freeform);
+		ArrayList<Freeform> overlapping = overlapping(freeform, strokes);
+		for (int i = 0; i < overlapping.size(); i++) {
+			if (!visited.contains(overlapping.get(i)))
+				cluster(overlapping.get(i), strokes, visited);
+		}
+		return visited;
+	}
+}
@@ -0,0 +1,30 @@
+package spiderdrawer.shape;
+
+/*
+ * A scene with every kind of relation: circles and labels in boxes, a spider across zones, a shading and
+ * a connective between two boxes.
+ */
+class TestScenes {
+
+	static ShapeList diagram() {
+		ShapeList shapeList = new ShapeList();
+		shapeList.add(Box.create(0, 0, 999, 799, shapeList));
+		shapeList.add(Box.create(100, 100, 400, 300, shapeList));
+		shapeList.add(Box.create(620, 100, 300, 300, shapeList));
+		shapeList.add(Circle.create(300, 250, 80, shapeList));
+		shapeList.add(Circle.create(380, 250, 80, shapeList));
+		shapeList.add(Circle.create(770, 250, 70, shapeList));
+		shapeList.add(Label.create('A', new Point(230, 180), shapeList));
+		shapeList.add(Label.create('B', new Point(450, 180), shapeList));
+		shapeList.add(Label.create('C', new Point(770, 160), shapeList));
+		shapeList.add(Point.create(260, 250, shapeList));
+		shapeList.add(Point.create(420, 250, shapeList));
+		shapeList.add(Line.create(265, 250, 415, 250, shapeList));
+		shapeList.add(Point.create(150, 350, shapeList));
+		Freeform stroke = new Freeform(335, 240);
+		stroke.addPoint(345, 260);
+		shapeList.add(Shading.create(stroke, shapeList));
+		shapeList.add(Connective.create(Logical.create(1), 560, 250, shapeList));
+		return shapeList;
+	}
+}
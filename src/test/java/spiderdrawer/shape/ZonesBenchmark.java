@@ -0,0 +1,85 @@
+package spiderdrawer.shape;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Random;
+
+/*
+ * Times the zone emptiness test with Zones.exists against building an Area, over every zone of random boxes,
+ * and counts the zones the two disagree on (only expected for near tangent circles).
+ * Usage: ZonesBenchmark [boxes] [circles per box]
+ */
+public class ZonesBenchmark {
+
+	public static void main(String[] args) {
+		int boxes = (args.length > 0)? Integer.parseInt(args[0]) : 200;
+		int n = (args.length > 1)? Integer.parseInt(args[1]) : 8;
+		Random generator = new Random(42);
+		Rectangle rect = new Rectangle(0, 0, 1000, 1000);
+		ArrayList<ArrayList<Circle>> scenes = new ArrayList<ArrayList<Circle>>();
+		for (int i = 0; i < boxes; i++) {
+			ArrayList<Circle> circles = new ArrayList<Circle>();
+			for (int j = 0; j < n; j++) {
+				int radius = 30 + generator.nextInt(150);
+				circles.add(Circle.create(radius + 1 + generator.nextInt(998 - 2*radius), radius + 1 + generator.nextInt(998 - 2*radius), radius, null));
+			}
+			scenes.add(circles);
+		}
+
+		for (int run = 0; run < 3; run++) {
+			long start = System.nanoTime();
+			int present = 0;
+			for (int i = 0; i < scenes.size(); i++)
+				present += count(scenes.get(i), rect, false);
+			long exact = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int areaPresent = 0;
+			for (int i = 0; i < scenes.size(); i++)
+				areaPresent += count(scenes.get(i), rect, true);
+			long area = System.nanoTime() - start;
+
+			System.out.println("Run " + run + ": " + boxes*((1 << n) - 1) + " zones, exact " + exact/1000000 + "ms (" + present + " present), "
+					+ "Area " + area/1000000 + "ms (" + areaPresent + " present)");
+		}
+
+		int disagree = 0;
+		for (int i = 0; i < scenes.size(); i++)
+			disagree += disagreements(scenes.get(i), rect);
+		System.out.println("Zones where the tests disagree: " + disagree);
+	}
+
+	private static int count(ArrayList<Circle> circles, Rectangle rect, boolean useArea) {
+		int present = 0;
+		for (int mask = 1; mask < (1 << circles.size()); mask++) {
+			ArrayList<Circle> included = new ArrayList<Circle>();
+			ArrayList<Circle> excluded = new ArrayList<Circle>();
+			split(circles, mask, included, excluded);
+			boolean exists = useArea? !Zones.area(rect, included, excluded).isEmpty() : Zones.exists(rect, included, excluded);
+			if (exists)
+				present++;
+		}
+		return present;
+	}
+
+	private static int disagreements(ArrayList<Circle> circles, Rectangle rect) {
+		int disagree = 0;
+		for (int mask = 1; mask < (1 << circles.size()); mask++) {
+			ArrayList<Circle> included = new ArrayList<Circle>();
+			ArrayList<Circle> excluded = new ArrayList<Circle>();
+			split(circles, mask, included, excluded);
+			if (Zones.exists(rect, included, excluded) == Zones.area(rect, included, excluded).isEmpty())
+				disagree++;
+		}
+		return disagree;
+	}
+
+	private static void split(ArrayList<Circle> circles, int mask, ArrayList<Circle> included, ArrayList<Circle> excluded) {
+		for (int i = 0; i < circles.size(); i++) {
+			if ((mask & (1 << i)) != 0)
+				included.add(circles.get(i));
+			else
+				excluded.add(circles.get(i));
+		}
+	}
+}
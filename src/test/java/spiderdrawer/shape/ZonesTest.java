@@ -0,0 +1,105 @@
+package spiderdrawer.shape;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * The zones found from the arrangement of the circles against building an Area for every subset of them.
+ */
+public class ZonesTest {
+
+	private static final Rectangle RECT = new Rectangle(0, 0, 1000, 1000);
+
+	@Test
+	public void presentZonesMatchArea() {
+		Random generator = new Random(7);
+		int arranged = 0;
+		for (int scene = 0; scene < 100; scene++) {
+			ArrayList<Circle> circles = randomCircles(generator, 2 + generator.nextInt(5));
+			Zones zones = Zones.compute(circles);
+			if (zones == null)
+				continue;
+			arranged++;
+			HashSet<Integer> present = new HashSet<Integer>();
+			ArrayList<ArrayList<Circle>> found = zones.present();
+			for (int i = 0; i < found.size(); i++)
+				present.add(mask(circles, found.get(i)));
+			for (int mask = 1; mask < (1 << circles.size()); mask++) {
+				boolean exists = !Zones.area(RECT, included(circles, mask), excluded(circles, mask)).isEmpty();
+				assertEquals("scene " + scene + " zone " + Integer.toBinaryString(mask), exists, present.contains(mask));
+			}
+		}
+		assertTrue(arranged > 50);
+	}
+
+	@Test
+	public void missingZonesAreTheRest() {
+		Random generator = new Random(11);
+		for (int scene = 0; scene < 50; scene++) {
+			ArrayList<Circle> circles = randomCircles(generator, 2 + generator.nextInt(5));
+			Zones zones = Zones.compute(circles);
+			if (zones == null)
+				continue;
+			HashSet<Integer> all = new HashSet<Integer>();
+			ArrayList<ArrayList<Circle>> present = zones.present();
+			ArrayList<ArrayList<Circle>> missing = zones.missing();
+			for (int i = 0; i < present.size(); i++)
+				all.add(mask(circles, present.get(i)));
+			for (int i = 0; i < missing.size(); i++)
+				assertTrue(all.add(mask(circles, missing.get(i))));
+			assertEquals((1 << circles.size()) - 1, all.size());
+		}
+	}
+
+	@Test
+	public void existsMatchesArea() {
+		Random generator = new Random(3);
+		for (int scene = 0; scene < 100; scene++) {
+			ArrayList<Circle> circles = randomCircles(generator, 2 + generator.nextInt(5));
+			if (Zones.compute(circles) == null)
+				continue;
+			for (int mask = 1; mask < (1 << circles.size()); mask++) {
+				ArrayList<Circle> included = included(circles, mask);
+				ArrayList<Circle> excluded = excluded(circles, mask);
+				assertEquals("scene " + scene + " zone " + Integer.toBinaryString(mask),
+						!Zones.area(RECT, included, excluded).isEmpty(), Zones.exists(RECT, included, excluded));
+			}
+		}
+	}
+
+	private static ArrayList<Circle> randomCircles(Random generator, int n) {
+		ArrayList<Circle> circles = new ArrayList<Circle>();
+		for (int i = 0; i < n; i++) {
+			int radius = 30 + generator.nextInt(150);
+			circles.add(Circle.create(radius + 1 + generator.nextInt(998 - 2*radius), radius + 1 + generator.nextInt(998 - 2*radius), radius, null));
+		}
+		return circles;
+	}
+
+	private static int mask(ArrayList<Circle> circles, ArrayList<Circle> zone) {
+		int mask = 0;
+		for (int i = 0; i < zone.size(); i++)
+			mask |= 1 << circles.indexOf(zone.get(i));
+		return mask;
+	}
+
+	private static ArrayList<Circle> included(ArrayList<Circle> circles, int mask) {
+		ArrayList<Circle> included = new ArrayList<Circle>();
+		for (int i = 0; i < circles.size(); i++) {
+			if ((mask & (1 << i)) != 0)
+				included.add(circles.get(i));
+		}
+		return included;
+	}
+
+	private static ArrayList<Circle> excluded(ArrayList<Circle> circles, int mask) {
+		return included(circles, ~mask);
+	}
+}